@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+/** The blob store.  Small files are stored whole, as by ObjectStore.
+ *  Files of at least CHUNK_THRESHOLD bytes are split by Chunker, each
+ *  chunk is stored as an object of this store under its own hash, and a
+ *  manifest listing the chunks is stored in a separate manifest store
+ *  under the hash of the whole file.  Blob ids are therefore the same
+ *  whichever way a file is stored, and a file that grows or changes in
+ *  place only adds the chunks around the change.
+ *
+ *  get, open, copyTo and contains accept either kind of blob; open and
+ *  copyTo stream a chunked blob one chunk at a time.
+ *  @author Nhu Vu
+ */
+class BlobStore extends ObjectStore {
+
+    /** Size in bytes from which files are chunked. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+
+    /** Magic number at the start of a manifest. */
+    static final int MAGIC = 0x474d4e46;
+
+    /** Current manifest format version. */
+    static final int VERSION = 1;
+
+    /** A blob store rooted at DIR, keeping manifests in MANIFESTS.
+     *
+     * @param dir for root directory of chunks and whole blobs.
+     * @param manifests for root directory of manifests.
+     */
+    BlobStore(File dir, File manifests) {
+        super(dir);
+        _manifests = new ObjectStore(manifests);
+    }
+
+    /** Return the store of manifests. */
+    ObjectStore manifests() {
+        return _manifests;
+    }
+
+    /** Return the chunk ids of blob ID in order, or null if it is not
+     *  chunked.
+     *
+     * @param id for blob id.
+     * @return the chunk ids, or null.
+     */
+    List<String> chunks(String id) {
+        if (super.contains(id) || !_manifests.contains(id)) {
+            return null;
+        }
+        return chunks(id, _manifests.get(id));
+    }
+
+    /** Return the chunk ids listed by CONTENTS, the manifest of blob ID.
+     *
+     * @param id for blob id.
+     * @param contents for the manifest.
+     * @return the chunk ids.
+     */
+    static List<String> chunks(String id, byte[] contents) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupt manifest %s.", id);
+            }
+            int count = in.readInt();
+            ArrayList<String> result = new ArrayList<>(count);
+            byte[] chunk = new byte[Pack.ID_BYTES];
+            for (int k = 0; k < count; k += 1) {
+                in.readFully(chunk);
+                result.add(Pack.toHex(chunk));
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt manifest %s.", id);
+        }
+    }
+
+    @Override
+    boolean contains(String id) {
+        return super.contains(id) || _manifests.contains(id);
+    }
+
+    /** Store FILE, chunking it if it is large, and return its id.  Each
+     *  byte is read once; only chunks not already present are compressed
+     *  and written.
+     *
+     * @param file for file to store.
+     * @return the id of the stored blob.
+     */
+    @Override
+    String putFile(File file) {
+        return putFile(file, null);
+    }
+
+    /** Store FILE, whose id the caller computed earlier as ID, or null
+     *  if it is unknown, and return its id.  A known id that is already
+     *  stored means FILE is not read at all.  Otherwise FILE is stored
+     *  under the id of the contents actually read, which differs from ID
+     *  if FILE changed since, so callers must use the returned id.  A
+     *  large file is read once, each chunk going through the chunk and
+     *  whole-file digests, and only chunks not already present are
+     *  compressed and written.
+     *
+     * @param file for file to store.
+     * @param id for the id of its contents, or null.
+     * @return the id of the stored blob.
+     */
+    String putFile(File file, String id) {
+        if (id != null && contains(id)) {
+            return id;
+        } else if (file.length() < CHUNK_THRESHOLD) {
+            return super.putFile(file);
+        }
+        long start = Trace.start();
+        ArrayList<String> chunks = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest whole = MessageDigest.getInstance("SHA-1");
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                whole.update(chunk);
+                String chunkId = Utils.hex(md.digest(chunk));
+                if (!super.contains(chunkId)) {
+                    put(chunkId, chunk);
+                }
+                chunks.add(chunkId);
+            }
+            id = Utils.hex(whole.digest());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!contains(id)) {
+            _manifests.put(id, manifest(chunks));
+        }
+        Trace.end(Trace.Op.STORE_FILE, start, file.length());
+        return id;
+    }
+
+    @Override
+    byte[] get(String id) {
+        List<String> chunks = chunks(id);
+        if (chunks == null) {
+            return super.get(id);
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (String chunk : chunks) {
+            result.writeBytes(super.get(chunk));
+        }
+        return result.toByteArray();
+    }
+
+    @Override
+    InputStream open(String id) {
+        List<String> chunks = chunks(id);
+        if (chunks == null) {
+            return super.open(id);
+        }
+        Iterator<String> next = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return BlobStore.super.open(next.next());
+            }
+        });
+    }
+
+    @Override
+    void copyTo(String id, File file) {
+        List<String> chunks = chunks(id);
+        if (chunks == null) {
+            super.copyTo(id, file);
+            return;
+        }
+        long start = Trace.start();
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        long bytes = 0;
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (String chunk : chunks) {
+                try (InputStream in = super.open(chunk)) {
+                    bytes += in.transferTo(out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.Op.COPY_OUT, start, bytes);
+    }
+
+    @Override
+    int pack() {
+        return super.pack() + _manifests.pack();
+    }
+
+    @Override
+    List<File> takeUnsynced() {
+        List<File> result = super.takeUnsynced();
+        result.addAll(_manifests.takeUnsynced());
+        return result;
+    }
+
+    /** Return the manifest listing CHUNKS. */
+    private static byte[] manifest(List<String> chunks) {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(chunks.size());
+            for (String chunk : chunks) {
+                out.write(Pack.toBytes(chunk));
+            }
+            out.close();
+            return stream.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding manifest.");
+        }
+    }
+
+    /** Store of manifests, by blob id. */
+    private final ObjectStore _manifests;
+}
@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/** A bundle: the objects of one transfer between repositories, as a
+ *  single stream.  After a header, each object is a record giving its
+ *  kind, its binary id and its compressed contents, and a zero byte ends
+ *  the bundle.  Objects are listed so that each follows everything it
+ *  refers to, and their contents are read from the sending repository
+ *  only as the stream is consumed, so memory use is bounded by the
+ *  largest object.
+ *  @author Nhu Vu
+ */
+class Bundle {
+
+    /** Magic number at the start of a bundle. */
+    static final int MAGIC = 0x4742444c;
+
+    /** Current bundle format version. */
+    static final int VERSION = 1;
+
+    /** Kind marking the end of a bundle. */
+    static final byte END = 0;
+
+    /** Kind of a commit. */
+    static final byte COMMIT = 1;
+
+    /** Kind of a tree. */
+    static final byte TREE = 2;
+
+    /** Kind of a whole blob or a chunk. */
+    static final byte BLOB = 3;
+
+    /** Kind of the manifest of a chunked blob. */
+    static final byte MANIFEST = 4;
+
+    /** An empty bundle of objects of repository SOURCE.
+     *
+     * @param source for the sending repository.
+     */
+    Bundle(Remote source) {
+        _source = source;
+        _kinds = new ArrayList<>();
+        _ids = new ArrayList<>();
+    }
+
+    /** Add the object of kind KIND with id ID.
+     *
+     * @param kind for object kind.
+     * @param id for object id.
+     */
+    void add(byte kind, String id) {
+        _kinds.add(kind);
+        _ids.add(id);
+    }
+
+    /** Return the number of objects in this bundle. */
+    int size() {
+        return _ids.size();
+    }
+
+    /** Return this bundle as a stream. */
+    InputStream open() {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return _next <= _ids.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                int k = _next;
+                _next += 1;
+                if (k < 0) {
+                    return new ByteArrayInputStream(header());
+                } else if (k == _ids.size()) {
+                    return new ByteArrayInputStream(new byte[] {END});
+                }
+                return new ByteArrayInputStream(record(k));
+            }
+
+            /** Index of the next record, -1 for the header. */
+            private int _next = -1;
+        });
+    }
+
+    /** Store the objects of the bundle read from STREAM in repository
+     *  TARGET, checking that each has the id it claims and that every
+     *  chunk a manifest lists is already stored, and return the commits
+     *  received in order.
+     *
+     * @param stream for the bundle.
+     * @param target for the receiving repository.
+     * @return the received commits.
+     */
+    static List<Commit> unpack(InputStream stream, Remote target) {
+        ArrayList<Commit> commits = new ArrayList<>();
+        try {
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Not a gitlet bundle.");
+            }
+            byte[] id = new byte[Pack.ID_BYTES];
+            for (byte kind = in.readByte(); kind != END;
+                 kind = in.readByte()) {
+                in.readFully(id);
+                String hex = Pack.toHex(id);
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                byte[] contents = Utils.decompress(payload);
+                if (kind != MANIFEST && !Utils.sha1(contents).equals(hex)) {
+                    throw Utils.error("Corrupt bundle object %s.", hex);
+                } else if (kind == MANIFEST) {
+                    for (String chunk : BlobStore.chunks(hex, contents)) {
+                        if (!target.store(BLOB).contains(chunk)) {
+                            throw Utils.error("Bundle lacks chunk %s of %s.",
+                                    chunk, hex);
+                        }
+                    }
+                }
+                target.store(kind).put(hex, contents);
+                if (kind == COMMIT) {
+                    commits.add(Commit.decode(hex, contents));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return commits;
+    }
+
+    /** Return the bundle header. */
+    private static byte[] header() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding bundle.");
+        }
+        return stream.toByteArray();
+    }
+
+    /** Return record K, reading its object from the source. */
+    private byte[] record(int k) {
+        byte kind = _kinds.get(k);
+        String id = _ids.get(k);
+        byte[] payload = Utils.compress(_source.store(kind).get(id));
+        ByteArrayOutputStream stream =
+            new ByteArrayOutputStream(payload.length + 32);
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeByte(kind);
+            out.write(Pack.toBytes(id));
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding bundle.");
+        }
+        return stream.toByteArray();
+    }
+
+    /** Sending repository. */
+    private final Remote _source;
+
+    /** Kind of each object. */
+    private final ArrayList<Byte> _kinds;
+
+    /** Id of each object. */
+    private final ArrayList<String> _ids;
+}
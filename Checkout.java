@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Materializes a set of working-tree changes, as computed by
+ *  DiffEngine.changes, into the working directory.  Deletions are done
+ *  first, on the calling thread; the remaining files are then streamed
+ *  out of the blob store by a bounded pool of workers, so that switching
+ *  between large trees is limited by the disk rather than by one thread.
+ *
+ *  The number of workers is the system property gitlet.checkout.workers,
+ *  by default the number of available processors.
+ *  @author Nhu Vu
+ */
+class Checkout {
+
+    /** System property giving the number of checkout workers. */
+    static final String WORKERS_PROPERTY = "gitlet.checkout.workers";
+
+    /** Fewest files written for which a worker pool is started. */
+    static final int PARALLEL_MIN = 64;
+
+    /** Return the configured number of checkout workers, at least 1. */
+    static int workers() {
+        return Math.max(1, Integer.getInteger(WORKERS_PROPERTY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Apply CHANGES, a map from path to new blob id, or to null for a
+     *  deletion, to the working directory ROOT, reading blobs from STORE.
+     *
+     * @param changes for changed paths.
+     * @param root for the working directory.
+     * @param store for store holding the blobs.
+     */
+    static void apply(Map<String, String> changes, File root,
+                      ObjectStore store) {
+        ArrayList<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                delete(root, e.getKey());
+            } else {
+                writes.add(e.getKey());
+            }
+        }
+        int workers = Math.min(workers(), writes.size());
+        if (workers <= 1 || writes.size() < PARALLEL_MIN) {
+            for (String name : writes) {
+                store.copyTo(changes.get(name), Utils.join(root, name));
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            ArrayList<Future<?>> pending = new ArrayList<>(writes.size());
+            for (String name : writes) {
+                String id = changes.get(name);
+                pending.add(pool.submit(() ->
+                        store.copyTo(id, Utils.join(root, name))));
+            }
+            for (Future<?> task : pending) {
+                task.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Delete working file NAME under ROOT, if present, and then each
+     *  directory above it that is left empty, up to ROOT.
+     *
+     * @param root for the working directory.
+     * @param name for file name.
+     */
+    static void delete(File root, String name) {
+        if (name.contains("/")) {
+            Utils.join(root, name).delete();
+            for (int k = name.lastIndexOf('/'); k > 0;
+                 k = name.lastIndexOf('/', k - 1)) {
+                File dir = Utils.join(root, name.substring(0, k));
+                String[] children = dir.list();
+                if (children == null || children.length > 0
+                        || !dir.delete()) {
+                    break;
+                }
+            }
+        } else {
+            Utils.restrictedDelete(Utils.join(root, name));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Content-defined chunking of a stream in the manner of FastCDC.  A
+ *  rolling gear hash is kept over the bytes of the current chunk, and the
+ *  chunk ends where the hash has enough low zero bits, so that inserting
+ *  or appending bytes only changes the chunks around the edit.  Chunks
+ *  are between MIN_SIZE and MAX_SIZE bytes; a stricter mask is used
+ *  before AVG_SIZE and a looser one after, which keeps most chunks near
+ *  the average.
+ *  @author Nhu Vu
+ */
+class Chunker {
+
+    /** Smallest chunk, except for the last. */
+    static final int MIN_SIZE = 16 * 1024;
+
+    /** Target average chunk size. */
+    static final int AVG_SIZE = 64 * 1024;
+
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Mask used before AVG_SIZE: two more bits than the average needs. */
+    private static final long MASK_S = (1L << 18) - 1;
+
+    /** Mask used after AVG_SIZE: two fewer bits than the average needs. */
+    private static final long MASK_L = (1L << 14) - 1;
+
+    /** Gear table: a fixed pseudo-random value for each byte.  It is
+     *  part of the storage format, so its seed must never change. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x676974_6c6574L);
+        for (int k = 0; k < GEAR.length; k += 1) {
+            GEAR[k] = random.nextLong();
+        }
+    }
+
+    /** A chunker reading from IN.
+     *
+     * @param in for stream to split.
+     */
+    Chunker(InputStream in) {
+        _in = in;
+        _buffer = new byte[MAX_SIZE];
+    }
+
+    /** Return the next chunk, or null at the end of the stream.  Memory
+     *  use is bounded by MAX_SIZE. */
+    byte[] next() {
+        fill();
+        if (_end == 0) {
+            return null;
+        }
+        int cut = cut(_buffer, _end);
+        byte[] result = Arrays.copyOf(_buffer, cut);
+        System.arraycopy(_buffer, cut, _buffer, 0, _end - cut);
+        _end -= cut;
+        return result;
+    }
+
+    /** Return the length of the first chunk of the N bytes of DATA. */
+    static int cut(byte[] data, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int limit = Math.min(n, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int k;
+        for (k = MIN_SIZE; k < normal; k += 1) {
+            hash = (hash << 1) + GEAR[data[k] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return k + 1;
+            }
+        }
+        for (; k < limit; k += 1) {
+            hash = (hash << 1) + GEAR[data[k] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return k + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Read until the buffer is full or the stream ends. */
+    private void fill() {
+        try {
+            while (_end < _buffer.length) {
+                int n = _in.read(_buffer, _end, _buffer.length - _end);
+                if (n < 0) {
+                    break;
+                }
+                _end += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stream being split. */
+    private final InputStream _in;
+
+    /** Bytes read but not yet returned, in _buffer[0 .. _end - 1]. */
+    private final byte[] _buffer;
+
+    /** Number of buffered bytes. */
+    private int _end;
+}
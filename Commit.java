@@ -1,34 +1,142 @@
 package gitlet;
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Date;
+import java.util.List;
 
-/** Class taking care of commit objects.
+/** Class taking care of commit objects.  Commits are stored in a
+ * canonical binary encoding (see encode), and a commit's hash is the
+ * SHA-1 of that encoding.  A commit's files are recorded by the hash of
+ * its root Tree.
  * @author Nhu Vu
  */
-public class Commit implements Serializable {
+public class Commit {
+
+    /** Version of the binary encoding written by encode. */
+    static final int VERSION = 3;
+
+    /** Pattern of commit timestamps. */
+    static final String TIME_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
 
     /** A commit object.
      *
      * @param parent for Parent commit.
      * @param message for Commit message.
-     * @param blob for commit blob pointer.
+     * @param tree for hash of the commit's root tree.
      *
      */
-    public Commit(String parent, String message,
-                  HashMap<String, String> blob) {
+    public Commit(String parent, String message, String tree) {
+        this(parent, null, message, tree);
+    }
+
+    /** A merge commit object.
+     *
+     * @param parent for Parent commit.
+     * @param secondParent for merged-in commit, or null.
+     * @param message for Commit message.
+     * @param tree for hash of the commit's root tree.
+     */
+    public Commit(String parent, String secondParent, String message,
+                  String tree) {
         this._parent = parent;
+        this._secondParent = secondParent;
         this._msg = message;
-        this._blobPointer = blob;
+        this._tree = tree;
 
         SimpleDateFormat formatter = new SimpleDateFormat();
-        formatter.applyLocalizedPattern("EEE "
-                + "MMM d HH:mm:ss yyyy Z");
+        formatter.applyLocalizedPattern(TIME_FORMAT);
         this._time = formatter.format(new Date());
 
-        byte[] myFile = Utils.serialize(this);
-        this.curr = Utils.sha1(myFile);
+        this.curr = Utils.sha1(encode());
+    }
+
+    /** A commit decoded from storage.
+     *
+     * @param hash for commit hash.
+     * @param parent for Parent commit.
+     * @param secondParent for merged-in commit, or null.
+     * @param time for commit timestamp.
+     * @param message for Commit message.
+     * @param tree for hash of the commit's root tree.
+     */
+    private Commit(String hash, String parent, String secondParent,
+                   String time, String message, String tree) {
+        this.curr = hash;
+        this._parent = parent;
+        this._secondParent = secondParent;
+        this._time = time;
+        this._msg = message;
+        this._tree = tree;
+    }
+
+    /** Returns the canonical binary encoding of this commit: the format
+     *  version, parent hashes, timestamp, message and root tree hash. */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeByte(VERSION);
+            writeString(out, _parent == null ? "" : _parent);
+            writeString(out, _secondParent == null ? "" : _secondParent);
+            writeString(out, _time);
+            writeString(out, _msg);
+            out.write(Pack.toBytes(_tree));
+            out.close();
+            return stream.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+    }
+
+    /** Returns the commit with hash HASH whose encoding is CONTENTS.
+     *
+     * @param hash for commit hash.
+     * @param contents for encoded commit.
+     * @return the decoded commit.
+     */
+    public static Commit decode(String hash, byte[] contents) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(contents));
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw Utils.error("Unknown commit version %d.", version);
+            }
+            String parent = readString(in);
+            String second = readString(in);
+            String time = readString(in);
+            String message = readString(in);
+            byte[] tree = new byte[Pack.ID_BYTES];
+            in.readFully(tree);
+            return new Commit(hash, parent.isEmpty() ? null : parent,
+                    second.isEmpty() ? null : second,
+                    time, message, Pack.toHex(tree));
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit %s.", hash);
+        }
+    }
+
+    /** Write S to OUT as a length followed by its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a string written by writeString, read from IN. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /** Returns the current commit's hashcode. */
@@ -41,31 +149,88 @@ public class Commit implements Serializable {
         return this._time;
     }
 
+    /** Returns the current commit's timestamp in milliseconds since
+     *  the epoch. */
+    public long timeMillis() {
+        SimpleDateFormat formatter = new SimpleDateFormat();
+        formatter.applyLocalizedPattern(TIME_FORMAT);
+        try {
+            return formatter.parse(this._time).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** Returns the current commit's parent hash. */
     public String parentHash() {
         return this._parent;
     }
 
+    /** Returns the hash of the commit merged into this one, or null. */
+    public String secondParentHash() {
+        return this._secondParent;
+    }
+
+    /** Returns the hashes of this commit's parents, first parent first. */
+    public List<String> parentHashes() {
+        ArrayList<String> result = new ArrayList<>();
+        if (_parent != null) {
+            result.add(_parent);
+        }
+        if (_secondParent != null) {
+            result.add(_secondParent);
+        }
+        return result;
+    }
+
     /** Returns the commit's message. */
     public String commitMsg() {
         return this._msg;
     }
 
-    /** Returns the blobs associated with this commit. */
+    /** Returns the hash of this commit's root tree. */
+    public String tree() {
+        return this._tree;
+    }
+
+    /** Returns the blobs associated with this commit, by path.  The tree
+     *  is flattened on first use. */
     public HashMap<String, String> getBlob() {
+        if (this._blobPointer == null) {
+            this._blobPointer = Tree.flatten(this._tree);
+        }
         return this._blobPointer;
     }
 
+    /** Returns the hash of this commit's blob at PATH, or null.  Only the
+     *  trees along PATH are read, unless the tree is already flattened.
+     *
+     * @param path for file path.
+     * @return the blob hash, or null.
+     */
+    public String blob(String path) {
+        if (this._blobPointer != null) {
+            return this._blobPointer.get(path);
+        }
+        return Tree.lookup(this._tree, path);
+    }
+
     /** Parent commit. */
     private String _parent;
 
+    /** Commit merged into this one, or null. */
+    private String _secondParent;
+
     /** Time of commit. */
     private String _time;
 
     /** Message connected to commit. */
     private String _msg;
 
-    /** My blob. */
+    /** Hash of my root tree. */
+    private String _tree;
+
+    /** My blobs by path, or null until first needed. */
     private HashMap<String, String> _blobPointer;
 
     /** My hashcode. */
@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of decoded commits keyed by hash, evicting the least
+ *  recently used commit once full.  Hits and misses are counted by Trace,
+ *  so --trace and --metrics= report them.
+ *  @author Nhu Vu
+ */
+class CommitCache {
+
+    /** A cache holding at most CAPACITY commits.
+     *
+     * @param capacity for maximum number of cached commits.
+     */
+    CommitCache(int capacity) {
+        _capacity = capacity;
+        _commits = new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Commit> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the commit with hash HASH, loading it from STORE on a miss.
+     *
+     * @param hash for commit hash.
+     * @param store for store holding the commit.
+     * @return the commit.
+     */
+    Commit get(String hash, ObjectStore store) {
+        long start = Trace.start();
+        Commit result = _commits.get(hash);
+        if (result != null) {
+            Trace.end(Trace.Op.COMMIT_HIT, start, 0);
+            return result;
+        }
+        byte[] contents = store.get(hash);
+        result = Commit.decode(hash, contents);
+        _commits.put(hash, result);
+        Trace.end(Trace.Op.COMMIT_MISS, start, contents.length);
+        return result;
+    }
+
+    /** Record commit C, which has just been written.
+     *
+     * @param c for commit.
+     */
+    void put(Commit c) {
+        _commits.put(c.getCommitHash(), c);
+    }
+
+    /** Return the number of commits currently cached. */
+    int size() {
+        return _commits.size();
+    }
+
+    /** Maximum number of cached commits. */
+    private final int _capacity;
+
+    /** Cached commits in least- to most-recently used order. */
+    private final LinkedHashMap<String, Commit> _commits;
+}
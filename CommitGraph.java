@@ -0,0 +1,378 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The commit graph: a file giving each commit a small integer id and
+ *  recording, in fixed-width rows, its hash, parent ids, generation
+ *  number and timestamp.  Rows are appended as commits are made, so a
+ *  commit's parents always have smaller ids.  The header records how
+ *  many rows were completely written, so an interrupted append shows
+ *  up as a mismatch with the rows present.  Ancestry queries run
+ *  against the memory-mapped rows without decoding any Commit.
+ *  @author Nhu Vu
+ */
+class CommitGraph {
+
+    /** Magic number at the start of a commit-graph file. */
+    static final int MAGIC = 0x47475248;
+
+    /** Current commit-graph format version. */
+    static final int VERSION = 2;
+
+    /** Offset in the header of the number of rows written. */
+    static final int COUNT = 8;
+
+    /** Size in bytes of the file header. */
+    static final int HEADER = 12;
+
+    /** Size in bytes of one row: hash, two parents, generation, time. */
+    static final int ROW = Pack.ID_BYTES + 4 + 4 + 4 + 8;
+
+    /** Parent id recorded for a missing parent. */
+    static final int NONE = -1;
+
+    /** The commit graph stored in FILE.
+     *
+     * @param file for the commit-graph file.
+     */
+    CommitGraph(File file) {
+        _file = file;
+        _ids = new HashMap<>();
+        load();
+    }
+
+    /** Return the number of commits in this graph. */
+    int size() {
+        return _count;
+    }
+
+    /** Return true iff the rows in the graph file do not match the count
+     *  in its header, as when an append was interrupted.
+     *
+     * @return whether the graph should be rebuilt.
+     */
+    boolean stale() {
+        return _stale;
+    }
+
+    /** Return the id of the commit with hash HASH, or NONE if it is not
+     *  in the graph.
+     *
+     * @param hash for commit hash.
+     * @return the commit id.
+     */
+    int id(String hash) {
+        Integer result = _ids.get(hash);
+        return result == null ? NONE : result;
+    }
+
+    /** Return the hash of commit ID.
+     *
+     * @param id for commit id.
+     * @return the commit hash.
+     */
+    String hash(int id) {
+        byte[] key = new byte[Pack.ID_BYTES];
+        _rows.get(HEADER + id * ROW, key);
+        return Pack.toHex(key);
+    }
+
+    /** Return the first parent of commit ID, or NONE.
+     *
+     * @param id for commit id.
+     * @return the parent id.
+     */
+    int parent(int id) {
+        return _rows.getInt(HEADER + id * ROW + Pack.ID_BYTES);
+    }
+
+    /** Return the second parent of commit ID, or NONE.
+     *
+     * @param id for commit id.
+     * @return the parent id.
+     */
+    int secondParent(int id) {
+        return _rows.getInt(HEADER + id * ROW + Pack.ID_BYTES + 4);
+    }
+
+    /** Return the generation number of commit ID: one more than the
+     *  largest generation of its parents, and 1 for a root commit.
+     *
+     * @param id for commit id.
+     * @return the generation number.
+     */
+    int generation(int id) {
+        return _rows.getInt(HEADER + id * ROW + Pack.ID_BYTES + 8);
+    }
+
+    /** Return the timestamp of commit ID in milliseconds since the epoch.
+     *
+     * @param id for commit id.
+     * @return the commit time.
+     */
+    long time(int id) {
+        return _rows.getLong(HEADER + id * ROW + Pack.ID_BYTES + 12);
+    }
+
+    /** Append commit C, whose parents must already be in the graph, and
+     *  return its id.  Does nothing if C is already present.
+     *
+     * @param c for the new commit.
+     * @return the commit id.
+     */
+    int add(Commit c) {
+        ArrayList<Commit> one = new ArrayList<>();
+        one.add(c);
+        append(one);
+        return id(c.getCommitHash());
+    }
+
+    /** Return true iff commit A is an ancestor of (or equal to) commit B.
+     *  Commits whose generation is below A's are never explored.
+     *
+     * @param a for the possible ancestor.
+     * @param b for the possible descendant.
+     * @return whether A is reachable from B.
+     */
+    boolean isAncestor(int a, int b) {
+        int floor = generation(a);
+        boolean[] seen = new boolean[_count];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(b);
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == a) {
+                return true;
+            }
+            if (k == NONE || seen[k] || generation(k) <= floor) {
+                continue;
+            }
+            seen[k] = true;
+            work.push(parent(k));
+            work.push(secondParent(k));
+        }
+        return false;
+    }
+
+    /** Return the latest common ancestor of commits A and B, or NONE if
+     *  they share no history.  Commits are visited in decreasing order of
+     *  generation, painting each with the side(s) it is reachable from.
+     *
+     * @param a for one commit.
+     * @param b for the other commit.
+     * @return the split point.
+     */
+    int splitPoint(int a, int b) {
+        byte[] paint = new byte[_count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> generation(y) != generation(x)
+                ? Integer.compare(generation(y), generation(x))
+                : Integer.compare(y, x));
+        paint[a] |= 1;
+        paint[b] |= 2;
+        queue.add(a);
+        if (a != b) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            if (paint[k] == 3) {
+                return k;
+            }
+            for (int p : new int[] {parent(k), secondParent(k)}) {
+                if (p != NONE && (paint[p] | paint[k]) != paint[p]) {
+                    if (paint[p] == 0) {
+                        queue.add(p);
+                    }
+                    paint[p] |= paint[k];
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Replace the contents of this graph with all commits in STORE,
+     *  ordered so that both parents precede their children and, subject
+     *  to that, oldest first, so that ids follow commit times as they do
+     *  when commits are appended as they are made.  Readers rebuilding at
+     *  the same time take turns.
+     *
+     * @param store for store holding every commit.
+     */
+    void rebuild(ObjectStore store) {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String hash : store.ids()) {
+            commits.put(hash, Gitlet.readCommit(hash));
+        }
+        HashMap<String, Integer> waiting = new HashMap<>();
+        HashMap<String, List<Commit>> children = new HashMap<>();
+        PriorityQueue<Commit> ready = new PriorityQueue<>(
+            (x, y) -> x.timeMillis() != y.timeMillis()
+                ? Long.compare(x.timeMillis(), y.timeMillis())
+                : x.getCommitHash().compareTo(y.getCommitHash()));
+        for (Commit c : commits.values()) {
+            int parents = 0;
+            for (String parent : c.parentHashes()) {
+                if (commits.containsKey(parent)) {
+                    children.computeIfAbsent(parent, k -> new ArrayList<>())
+                        .add(c);
+                    parents += 1;
+                }
+            }
+            if (parents == 0) {
+                ready.add(c);
+            } else {
+                waiting.put(c.getCommitHash(), parents);
+            }
+        }
+        ArrayList<Commit> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            Commit c = ready.poll();
+            order.add(c);
+            for (Commit child : children.getOrDefault(c.getCommitHash(),
+                                                      List.of())) {
+                if (waiting.merge(child.getCommitHash(), -1, Integer::sum)
+                        == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+        RepoLock.Cache cache = RepoLock.cache();
+        try {
+            _file.delete();
+            _ids.clear();
+            load();
+            append(order);
+        } finally {
+            cache.close();
+        }
+    }
+
+    /** Append the rows of COMMITS, in order, to the graph file, writing
+     *  over any rows past the count in its header, then update the count.
+     *  A file in an older format is started afresh. */
+    private void append(List<Commit> commits) {
+        load();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        int next = _count;
+        try (DataOutputStream out = new DataOutputStream(rows)) {
+            HashMap<String, Integer> added = new HashMap<>();
+            HashMap<Integer, Integer> generations = new HashMap<>();
+            for (Commit c : commits) {
+                String hash = c.getCommitHash();
+                if (_ids.containsKey(hash) || added.containsKey(hash)) {
+                    continue;
+                }
+                int[] parents = {NONE, NONE};
+                int gen = 1;
+                String[] hashes = {c.parentHash(), c.secondParentHash()};
+                for (int k = 0; k < parents.length; k += 1) {
+                    if (hashes[k] == null) {
+                        continue;
+                    }
+                    Integer p = added.get(hashes[k]);
+                    if (p != null) {
+                        parents[k] = p;
+                        gen = Math.max(gen, generations.get(p) + 1);
+                    } else if (_ids.containsKey(hashes[k])) {
+                        parents[k] = _ids.get(hashes[k]);
+                        gen = Math.max(gen, generation(parents[k]) + 1);
+                    }
+                }
+                out.write(Pack.toBytes(hash));
+                out.writeInt(parents[0]);
+                out.writeInt(parents[1]);
+                out.writeInt(gen);
+                out.writeLong(c.timeMillis());
+                added.put(hash, next);
+                generations.put(next, gen);
+                next += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (next == _count) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "rw")) {
+            if (_count == 0) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(0);
+            }
+            long end = HEADER + (long) _count * ROW;
+            raf.seek(end);
+            raf.write(rows.toByteArray());
+            raf.setLength(end + rows.size());
+            raf.seek(COUNT);
+            raf.writeInt(next);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+    }
+
+    /** Map the graph file and index the hashes of any rows not yet
+     *  known, such as rows appended by another process.  Only the rows
+     *  counted in the header are used; a file in an older format has
+     *  none. */
+    void load() {
+        if (!_file.exists()) {
+            _count = 0;
+            _stale = false;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_file, "r");
+             FileChannel channel = raf.getChannel()) {
+            _rows = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_rows.capacity() >= 4 && _rows.getInt(0) != MAGIC) {
+            throw Utils.error("corrupt commit graph");
+        }
+        if (_rows.capacity() < HEADER || _rows.getInt(4) != VERSION) {
+            _ids.clear();
+            _count = 0;
+            _stale = true;
+            return;
+        }
+        int count = _rows.getInt(COUNT);
+        _stale = (long) HEADER + (long) count * ROW != _rows.capacity();
+        if (_stale) {
+            count = Math.min(count, (_rows.capacity() - HEADER) / ROW);
+        }
+        for (int k = _count; k < count; k += 1) {
+            _ids.put(hash(k), k);
+        }
+        _count = count;
+    }
+
+    /** The commit-graph file. */
+    private final File _file;
+
+    /** Memory-mapped rows of the graph file. */
+    private MappedByteBuffer _rows;
+
+    /** Number of rows in the graph. */
+    private int _count;
+
+    /** Whether the rows of the file disagree with its header. */
+    private boolean _stale;
+
+    /** Map from commit hash to id. */
+    private final HashMap<String, Integer> _ids;
+}
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-running gitlet process serving commands over a Unix domain
+ *  socket in the repository, so that repeated commands avoid JVM startup
+ *  and reuse warm caches.  A request is the argument count followed by
+ *  the arguments, each a length and that many bytes of UTF-8, so that
+ *  arguments of any size are sent whole.  The response is a sequence of
+ *  frames, each a kind byte and a length, carrying what the command
+ *  printed to its standard output and standard error, the latter
+ *  including the figures printed by --trace, and ends with a frame
+ *  giving its exit status.  The daemon may also run a Monitor of the
+ *  working directory, which it syncs before each command.
+ *  @author Nhu Vu
+ */
+class Daemon {
+
+    /** Socket on which the daemon listens. */
+    static final File SOCKET = Utils.join(Gitlet.GITLET_REPO, "daemon.sock");
+
+    /** Frame kind carrying the exit status, which ends a response. */
+    static final byte EXIT = 0;
+
+    /** Frame kind carrying standard output. */
+    static final byte OUT = 1;
+
+    /** Frame kind carrying standard error. */
+    static final byte ERR = 2;
+
+    /** Status returned by forward when no daemon is running. */
+    static final int NOT_RUNNING = -1;
+
+    /** Serve commands on repository REPO until asked to stop, watching
+     *  the working directory if WATCH.
+     *
+     * @param repo for this gitlet repo.
+     * @param watch for whether to run a file monitor.
+     */
+    static void serve(Gitlet repo, boolean watch) {
+        SOCKET.delete();
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(SOCKET.toPath());
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            SOCKET.deleteOnExit();
+            if (watch) {
+                try {
+                    Monitor.start(Gitlet.CWD, Gitlet.GITLET_REPO);
+                } catch (IOException excp) {
+                    System.out.println("Could not watch working directory: "
+                            + excp.getMessage());
+                }
+            }
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(repo, client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            System.out.println("Could not start daemon: "
+                    + excp.getMessage());
+        } finally {
+            Monitor.stop();
+            SOCKET.delete();
+        }
+    }
+
+    /** Run one request from CLIENT on REPO.  Returns false if the
+     *  request asked the daemon to stop. */
+    private static boolean handle(Gitlet repo, SocketChannel client)
+        throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int k = 0; k < args.length; k += 1) {
+            byte[] arg = new byte[in.readInt()];
+            in.readFully(arg);
+            args[k] = new String(arg, StandardCharsets.UTF_8);
+        }
+        DataOutputStream frames = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream out = frameStream(frames, OUT);
+        PrintStream err = frameStream(frames, ERR);
+        System.setOut(out);
+        System.setErr(err);
+        int status = 0;
+        boolean running = true;
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                status = control(args);
+                running = !(args.length == 2 && args[1].equals("--stop"));
+            } else {
+                Monitor monitor = Monitor.active();
+                if (monitor != null) {
+                    monitor.sync();
+                }
+                Main.run(repo, args);
+            }
+        } catch (RuntimeException excp) {
+            err.println(excp.getMessage());
+            status = 1;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        frames.writeByte(EXIT);
+        frames.writeInt(status);
+        frames.flush();
+        return running;
+    }
+
+    /** Carry out the daemon command ARGS sent to this running daemon,
+     *  returning its exit status.  Asking it to watch the working
+     *  directory starts its monitor if none runs; asking it to serve is
+     *  an error, since it already does. */
+    private static int control(String... args) {
+        if (args.length == 2 && args[1].equals("--stop")) {
+            return 0;
+        } else if (args.length == 2 && args[1].equals("--watch")) {
+            if (Monitor.active() != null) {
+                System.out.println("The daemon is already watching the "
+                        + "working directory.");
+                return 0;
+            }
+            try {
+                Monitor.start(Gitlet.CWD, Gitlet.GITLET_REPO);
+                System.out.println("The running daemon now watches the "
+                        + "working directory.");
+                return 0;
+            } catch (IOException excp) {
+                System.out.println("Could not watch working directory: "
+                        + excp.getMessage());
+                return 1;
+            }
+        } else if (args.length == 1) {
+            System.out.println("A daemon is already running.");
+            return 1;
+        }
+        System.out.println("Incorrect operands.");
+        return 1;
+    }
+
+    /** Return a stream writing what is printed to it to FRAMES as frames
+     *  of kind KIND.
+     *
+     * @param frames for the response.
+     * @param kind for frame kind.
+     * @return the stream.
+     */
+    private static PrintStream frameStream(DataOutputStream frames,
+                                           byte kind) {
+        OutputStream framer = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len)
+                throws IOException {
+                synchronized (frames) {
+                    frames.writeByte(kind);
+                    frames.writeInt(len);
+                    frames.write(b, off, len);
+                }
+            }
+        };
+        return new PrintStream(new BufferedOutputStream(framer), false,
+                StandardCharsets.UTF_8);
+    }
+
+    /** Send the command ARGS to a running daemon, copying its output to
+     *  System.out and System.err, and return its exit status.  Returns
+     *  NOT_RUNNING, having done nothing, if no daemon is running, in
+     *  which case the caller should run the command itself.  A metrics
+     *  file is named to the daemon by its absolute path.
+     *
+     * @param args for inputs.
+     * @return the exit status, or NOT_RUNNING.
+     */
+    static int forward(String... args) {
+        if (!SOCKET.exists()) {
+            return NOT_RUNNING;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return NOT_RUNNING;
+        }
+        try (SocketChannel server = channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(server)));
+            out.writeInt(args.length);
+            boolean options = true;
+            for (String arg : args) {
+                options &= arg.equals("--trace")
+                    || arg.startsWith(Main.METRICS_OPTION);
+                if (options && arg.startsWith(Main.METRICS_OPTION)) {
+                    arg = Main.METRICS_OPTION + new File(arg.substring(
+                            Main.METRICS_OPTION.length())).getAbsolutePath();
+                }
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(server)));
+            for (byte kind = in.readByte(); kind != EXIT;
+                 kind = in.readByte()) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                PrintStream dest = kind == ERR ? System.err : System.out;
+                dest.write(bytes, 0, bytes.length);
+                dest.flush();
+            }
+            return in.readInt();
+        } catch (IOException excp) {
+            System.out.println("Lost connection to daemon: "
+                    + excp.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Computes the differences between two trees, or between a tree and
+ *  the working directory, in a single merge pass over entries sorted by
+ *  name.  Subtrees with equal hashes are skipped without being read.
+ *  @author Nhu Vu
+ */
+class DiffEngine {
+
+    /** Return the differences from tree FROM to tree TO, sorted by path.
+     *  Either may be null, meaning an empty tree.  If RENAMES, a deleted
+     *  path and an added path with the same blob are reported as one
+     *  rename.
+     *
+     * @param from for old root tree hash.
+     * @param to for new root tree hash.
+     * @param renames for whether to detect renames.
+     * @return the differences.
+     */
+    static List<DiffEntry> diffTrees(String from, String to,
+                                     boolean renames) {
+        ArrayList<DiffEntry> result = new ArrayList<>();
+        diffTrees(from, to, "", result);
+        Collections.sort(result);
+        return renames ? detectRenames(result) : result;
+    }
+
+    /** Add the differences from tree FROM to tree TO to RESULT, prefixing
+     *  paths with PREFIX. */
+    private static void diffTrees(String from, String to, String prefix,
+                                  List<DiffEntry> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = Tree.read(from), b = Tree.read(to);
+        mergePass(a.blobs(), b.blobs(), prefix, result);
+        Iterator<Map.Entry<String, String>> i =
+            a.trees().entrySet().iterator();
+        Iterator<Map.Entry<String, String>> j =
+            b.trees().entrySet().iterator();
+        Map.Entry<String, String> x = next(i), y = next(j);
+        while (x != null || y != null) {
+            int c = x == null ? 1 : y == null ? -1
+                : x.getKey().compareTo(y.getKey());
+            String dir = c <= 0 ? x.getKey() : y.getKey();
+            diffTrees(c <= 0 ? x.getValue() : null,
+                    c >= 0 ? y.getValue() : null,
+                    prefix + dir + "/", result);
+            if (c <= 0) {
+                x = next(i);
+            }
+            if (c >= 0) {
+                y = next(j);
+            }
+        }
+    }
+
+    /** Return the differences from tree TREE to the working directory,
+     *  sorted by path.  Working files are hashed through STAGE's stat
+     *  cache.  Files absent from TREE are reported as added only if
+     *  UNTRACKED, or if they are staged for addition.  Committed files
+     *  outside the sparse-checkout patterns are ignored unless present.
+     *
+     * @param tree for root tree hash.
+     * @param stage for staging area.
+     * @param untracked for whether to report untracked files.
+     * @return the differences.
+     */
+    static List<DiffEntry> diffWorkingTree(String tree, Stage stage,
+                                           boolean untracked) {
+        TreeMap<String, String> committed =
+            new TreeMap<>(Tree.flatten(tree));
+        TreeMap<String, String> working = new TreeMap<>();
+        for (String name : Gitlet.workingFiles()) {
+            if (untracked || committed.containsKey(name)
+                    || stage.getAdded().containsKey(name)) {
+                working.put(name, stage.hash(name,
+                        Utils.join(Gitlet.CWD, name)));
+            }
+        }
+        SparseCheckout sparse = Gitlet.sparse();
+        committed.keySet().removeIf(name -> !sparse.includes(name)
+                && !working.containsKey(name));
+        ArrayList<DiffEntry> result = new ArrayList<>();
+        mergePass(committed, working, "", result);
+        return result;
+    }
+
+    /** Compare blob maps A and B, both sorted by name, in one pass and add
+     *  their differences to RESULT, prefixing paths with PREFIX. */
+    private static void mergePass(TreeMap<String, String> a,
+                                  TreeMap<String, String> b, String prefix,
+                                  List<DiffEntry> result) {
+        Iterator<Map.Entry<String, String>> i = a.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> j = b.entrySet().iterator();
+        Map.Entry<String, String> x = next(i), y = next(j);
+        while (x != null || y != null) {
+            int c = x == null ? 1 : y == null ? -1
+                : x.getKey().compareTo(y.getKey());
+            if (c < 0) {
+                result.add(new DiffEntry(DiffEntry.Type.DELETED,
+                        prefix + x.getKey(), prefix + x.getKey(),
+                        x.getValue(), null));
+                x = next(i);
+            } else if (c > 0) {
+                result.add(new DiffEntry(DiffEntry.Type.ADDED, null,
+                        prefix + y.getKey(), null, y.getValue()));
+                y = next(j);
+            } else {
+                if (!x.getValue().equals(y.getValue())) {
+                    result.add(new DiffEntry(DiffEntry.Type.MODIFIED,
+                            prefix + x.getKey(), prefix + x.getKey(),
+                            x.getValue(), y.getValue()));
+                }
+                x = next(i);
+                y = next(j);
+            }
+        }
+    }
+
+    /** Return ENTRIES with each deleted path paired with an added path of
+     *  the same blob replaced by a single rename, sorted by path. */
+    static List<DiffEntry> detectRenames(List<DiffEntry> entries) {
+        HashMap<String, ArrayList<DiffEntry>> deleted = new HashMap<>();
+        for (DiffEntry e : entries) {
+            if (e.type() == DiffEntry.Type.DELETED) {
+                deleted.computeIfAbsent(e.oldHash(), k -> new ArrayList<>())
+                    .add(e);
+            }
+        }
+        ArrayList<DiffEntry> result = new ArrayList<>();
+        HashSet<DiffEntry> renamedFrom = new HashSet<>();
+        for (DiffEntry e : entries) {
+            if (e.type() != DiffEntry.Type.ADDED) {
+                continue;
+            }
+            ArrayList<DiffEntry> sources = deleted.get(e.newHash());
+            if (sources != null && !sources.isEmpty()) {
+                DiffEntry source = sources.remove(0);
+                renamedFrom.add(source);
+                result.add(new DiffEntry(DiffEntry.Type.RENAMED,
+                        source.path(), e.path(), e.newHash(), e.newHash()));
+            } else {
+                result.add(e);
+            }
+        }
+        for (DiffEntry e : entries) {
+            if (e.type() != DiffEntry.Type.ADDED && !renamedFrom.contains(e)) {
+                result.add(e);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the changed paths in ENTRIES, mapped to their new blob, or
+     *  to null if deleted.  Renames become a deletion and an addition.
+     *
+     * @param entries for differences.
+     * @return the changed paths.
+     */
+    static TreeMap<String, String> changes(List<DiffEntry> entries) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (DiffEntry e : entries) {
+            if (e.type() == DiffEntry.Type.RENAMED) {
+                result.put(e.oldPath(), null);
+            }
+            result.put(e.path(), e.newHash());
+        }
+        return result;
+    }
+
+    /** Return the next entry of I, or null if there is none. */
+    private static Map.Entry<String, String> next(
+            Iterator<Map.Entry<String, String>> i) {
+        return i.hasNext() ? i.next() : null;
+    }
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+/** One difference between two trees, or between a tree and the working
+ *  directory: a path that was added, modified, deleted or renamed.
+ *  @author Nhu Vu
+ */
+class DiffEntry implements Comparable<DiffEntry> {
+
+    /** Kinds of difference. */
+    enum Type {
+        /** Path present only on the new side. */
+        ADDED,
+        /** Path present on both sides with different contents. */
+        MODIFIED,
+        /** Path present only on the old side. */
+        DELETED,
+        /** Contents moved from OLDPATH to PATH unchanged. */
+        RENAMED
+    }
+
+    /** A difference of kind TYPE at PATH, previously at OLDPATH, whose
+     *  blob changed from OLDHASH to NEWHASH.
+     *
+     * @param type for kind of difference.
+     * @param oldPath for path on the old side, or null.
+     * @param path for path on the new side, or the deleted path.
+     * @param oldHash for blob on the old side, or null.
+     * @param newHash for blob on the new side, or null.
+     */
+    DiffEntry(Type type, String oldPath, String path, String oldHash,
+              String newHash) {
+        _type = type;
+        _oldPath = oldPath;
+        _path = path;
+        _oldHash = oldHash;
+        _newHash = newHash;
+    }
+
+    /** Return the kind of this difference. */
+    Type type() {
+        return _type;
+    }
+
+    /** Return the path on the new side, or the deleted path. */
+    String path() {
+        return _path;
+    }
+
+    /** Return the path on the old side, or null if added. */
+    String oldPath() {
+        return _oldPath;
+    }
+
+    /** Return the blob on the old side, or null if added. */
+    String oldHash() {
+        return _oldHash;
+    }
+
+    /** Return the blob on the new side, or null if deleted. */
+    String newHash() {
+        return _newHash;
+    }
+
+    @Override
+    public int compareTo(DiffEntry other) {
+        return _path.compareTo(other._path);
+    }
+
+    @Override
+    public String toString() {
+        switch (_type) {
+        case ADDED:
+            return "A " + _path;
+        case MODIFIED:
+            return "M " + _path;
+        case DELETED:
+            return "D " + _path;
+        default:
+            return "R " + _oldPath + " -> " + _path;
+        }
+    }
+
+    /** Kind of difference. */
+    private final Type _type;
+
+    /** Path on the old side. */
+    private final String _oldPath;
+
+    /** Path on the new side. */
+    private final String _path;
+
+    /** Blob on the old side. */
+    private final String _oldHash;
+
+    /** Blob on the new side. */
+    private final String _newHash;
+}
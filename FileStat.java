@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/** Stat data of a working file, recorded together with the file's hash
+ *  so that an unchanged file need not be read and hashed again.
+ *  @author Nhu Vu
+ */
+class FileStat implements Serializable {
+
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    /** Files modified within this many milliseconds of being recorded are
+     *  not trusted, since a later write in the same clock tick would leave
+     *  their stat data unchanged. */
+    static final long RACY_MILLIS = 2000;
+
+    /** Stat data SIZE, MTIME and INODE of a file whose contents hash to
+     *  HASH, recorded at time RECORDED.
+     *
+     * @param size for file size in bytes.
+     * @param mtime for modification time in nanoseconds.
+     * @param inode for file inode, or 0 if unknown.
+     * @param hash for hash of the file contents.
+     * @param recorded for time of recording in milliseconds.
+     */
+    FileStat(long size, long mtime, long inode, String hash, long recorded) {
+        _size = size;
+        _mtime = mtime;
+        _inode = inode;
+        _hash = hash;
+        _recorded = recorded;
+    }
+
+    /** Return the current stat data of FILE, with HASH as its hash, or
+     *  null if FILE cannot be examined.
+     *
+     * @param file for working file.
+     * @param hash for hash of the file contents.
+     * @return the stat data.
+     */
+    static FileStat of(File file, String hash) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            long inode = 0;
+            try {
+                Object ino = Files.getAttribute(file.toPath(), "unix:ino");
+                inode = ((Number) ino).longValue();
+            } catch (UnsupportedOperationException | IOException excp) {
+                inode = 0;
+            }
+            return new FileStat(attrs.size(),
+                    attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    inode, hash, System.currentTimeMillis());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff OTHER describes the same size, modification time
+     *  and inode as this, and this was not recorded too soon after the
+     *  file was modified to be trusted.
+     *
+     * @param other for fresh stat data of the file.
+     * @return whether the recorded hash may be reused.
+     */
+    boolean matches(FileStat other) {
+        return other != null && _size == other._size
+            && _mtime == other._mtime && _inode == other._inode
+            && TimeUnit.NANOSECONDS.toMillis(_mtime) + RACY_MILLIS
+                < _recorded;
+    }
+
+    /** Return the recorded hash. */
+    String hash() {
+        return _hash;
+    }
+
+    /** File size in bytes. */
+    private final long _size;
+
+    /** Modification time in nanoseconds. */
+    private final long _mtime;
+
+    /** Inode number, or 0 if unknown. */
+    private final long _inode;
+
+    /** Hash of the file contents. */
+    private final String _hash;
+
+    /** Time at which this was recorded, in milliseconds. */
+    private final long _recorded;
+}
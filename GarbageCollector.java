@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Reachability-based garbage collection of the object stores.  Every
+ *  commit, tree and blob reachable from a branch or from the staging
+ *  area is marked; loose objects that are not marked and are older than
+ *  a grace period are then deleted, and optionally every store is
+ *  repacked into a single pack without its unreachable objects.  Objects
+ *  the grace period spares keep everything they refer to.
+ *
+ *  Marking keeps only the set of marked ids and reads commits and trees,
+ *  never blobs, so its memory grows with the number of objects rather
+ *  than their size.  Trees are walked a level at a time, each level in
+ *  parallel, and each store is swept in parallel.
+ *  @author Nhu Vu
+ */
+class GarbageCollector {
+
+    /** Default grace period in milliseconds: objects younger than this
+     *  are never deleted, even if unreachable. */
+    static final long GRACE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    /** A collector that spares objects younger than GRACE milliseconds,
+     *  and repacks the stores if REPACK.
+     *
+     * @param grace for grace period in milliseconds.
+     * @param repack for whether to repack afterwards.
+     */
+    GarbageCollector(long grace, boolean repack) {
+        _cutoff = System.currentTimeMillis() - grace;
+        _repack = repack;
+    }
+
+    /** Collect the repository's garbage.  Returns the number of objects
+     *  deleted. */
+    int collect() {
+        mark();
+        int removed = sweep(Gitlet.COMMITS, _commits);
+        removed += sweep(Gitlet.TREES, _trees);
+        removed += sweep(Gitlet.BLOBS.manifests(), _blobs);
+        removed += sweep(Gitlet.BLOBS, _blobs);
+        if (_repack) {
+            removed += Gitlet.COMMITS.repack(_commits, _cutoff);
+            removed += Gitlet.TREES.repack(_trees, _cutoff);
+            removed += Gitlet.BLOBS.manifests().repack(_blobs, _cutoff);
+            removed += Gitlet.BLOBS.repack(_blobs, _cutoff);
+        }
+        if (removed > 0) {
+            Gitlet.graph().rebuild(Gitlet.COMMITS);
+            Gitlet.messageIndex().rebuild(Gitlet.COMMITS);
+        }
+        return removed;
+    }
+
+    /** Mark every object reachable from the branches and the stage
+     *  through both parents of merge commits, then every object reachable
+     *  from an unmarked object younger than the cutoff, so that the grace
+     *  period never keeps an object while deleting what it refers to.
+     *  The chunks of marked chunked blobs are marked last. */
+    private void mark() {
+        ArrayList<String> roots = new ArrayList<>();
+        for (String name : Gitlet.branchNames(Gitlet.BRANCH_DIR)) {
+            roots.add(Utils.readContentsAsString(
+                    Utils.join(Gitlet.BRANCH_DIR, name + ".txt")));
+        }
+        ArrayList<String> level = new ArrayList<>();
+        markCommits(roots, level);
+        _blobs.addAll(Gitlet.readStage().getAdded().values());
+        markTrees(level);
+        level = new ArrayList<>();
+        markCommits(young(Gitlet.COMMITS, _commits), level);
+        level.addAll(young(Gitlet.TREES, _trees));
+        markTrees(level);
+        _blobs.addAll(young(Gitlet.BLOBS.manifests(), _blobs));
+        _blobs.addAll(young(Gitlet.BLOBS, _blobs));
+        new ArrayList<>(_blobs).parallelStream()
+            .map(Gitlet.BLOBS::chunks)
+            .filter(chunks -> chunks != null)
+            .forEach(_blobs::addAll);
+    }
+
+    /** Mark the commits in ROOTS and their ancestors, adding the root
+     *  tree of each newly marked commit to LEVEL. */
+    private void markCommits(List<String> roots, List<String> level) {
+        ArrayDeque<String> work = new ArrayDeque<>(roots);
+        while (!work.isEmpty()) {
+            String hash = work.pop();
+            if (_commits.add(hash)) {
+                Commit c = Gitlet.readCommit(hash);
+                if (c.tree() != null) {
+                    level.add(c.tree());
+                }
+                work.addAll(c.parentHashes());
+            }
+        }
+    }
+
+    /** Return the objects of STORE not in MARKED that the grace period
+     *  spares: loose objects modified at or after the cutoff, and the
+     *  objects of packs written since.  Everything they refer to must be
+     *  kept with them. */
+    private List<String> young(ObjectStore store, Set<String> marked) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : store.looseIds()) {
+            if (!marked.contains(id)
+                    && store.path(id).lastModified() >= _cutoff) {
+                result.add(id);
+            }
+        }
+        for (Pack pack : store.packs()) {
+            if (pack.packFile().lastModified() >= _cutoff) {
+                for (String id : pack.ids()) {
+                    if (!marked.contains(id)) {
+                        result.add(id);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Mark the trees in ROOTS, their subtrees and their blobs. */
+    private void markTrees(List<String> roots) {
+        List<String> level = roots;
+        while (!level.isEmpty()) {
+            ConcurrentHashMap<String, Boolean> next =
+                new ConcurrentHashMap<>();
+            level.parallelStream()
+                .filter(_trees::add)
+                .forEach(hash -> {
+                    Tree tree = Tree.read(hash);
+                    _blobs.addAll(tree.blobs().values());
+                    for (String sub : tree.trees().values()) {
+                        if (!_trees.contains(sub)) {
+                            next.put(sub, true);
+                        }
+                    }
+                });
+            level = new ArrayList<>(next.keySet());
+        }
+    }
+
+    /** Delete the loose objects of STORE that are not in MARKED and were
+     *  last modified before the cutoff, along with abandoned temporary
+     *  files.  Returns the number of objects deleted. */
+    private int sweep(ObjectStore store, Set<String> marked) {
+        int removed = (int) store.looseIds().parallelStream()
+            .filter(id -> !marked.contains(id))
+            .filter(id -> store.path(id).lastModified() < _cutoff)
+            .filter(id -> store.path(id).delete())
+            .count();
+        File[] dirs = store.dir().listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                sweepTemporary(dir);
+                dir.delete();
+            }
+        }
+        sweepTemporary(store.dir());
+        return removed;
+    }
+
+    /** Delete temporary files in DIR last modified before the cutoff. */
+    private void sweepTemporary(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")
+                    && file.lastModified() < _cutoff) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Time before which unreachable objects may be deleted. */
+    private final long _cutoff;
+
+    /** Whether to repack the stores. */
+    private final boolean _repack;
+
+    /** Marked commits. */
+    private final Set<String> _commits = ConcurrentHashMap.newKeySet();
+
+    /** Marked trees. */
+    private final Set<String> _trees = ConcurrentHashMap.newKeySet();
+
+    /** Marked blobs. */
+    private final Set<String> _blobs = ConcurrentHashMap.newKeySet();
+}
@@ -1,12 +1,23 @@
 package gitlet;
 
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Gitlet class, class containing all
  * functionalities of Gitlet.
@@ -32,6 +43,59 @@ public class Gitlet implements Serializable {
     /** Directory for my staging area. */
     static final File STAGING_AREA = Utils.join(GITLET_REPO, "stage");
 
+    /** Object store holding my commits. */
+    static final ObjectStore COMMITS = new ObjectStore(COMMITS_DIR);
+
+    /** Folder to keep track of the manifests of my chunked blobs. */
+    static final File MANIFESTS_DIR = Utils.join(GITLET_REPO, "manifests");
+
+    /** Object store holding my blobs, chunking large ones. */
+    static final BlobStore BLOBS = new BlobStore(BLOBS_DIR, MANIFESTS_DIR);
+
+    /** Folder to keep track of my trees. */
+    static final File TREES_DIR = Utils.join(GITLET_REPO, "trees");
+
+    /** Object store holding my trees. */
+    static final ObjectStore TREES = new ObjectStore(TREES_DIR);
+
+    /** File holding the commit graph. */
+    static final File GRAPH_FILE = Utils.join(GITLET_REPO, "commit-graph");
+
+    /** Maximum number of decoded commits kept in memory. */
+    static final int CACHE_SIZE = 4096;
+
+    /** Cache of decoded commits; every commit load goes through it. */
+    static final CommitCache CACHE = new CommitCache(CACHE_SIZE);
+
+    /** Compacted commit message index. */
+    static final File MESSAGE_INDEX = Utils.join(GITLET_REPO, "message-index");
+
+    /** Journal of commits not yet in the compacted message index. */
+    static final File MESSAGE_JOURNAL =
+        Utils.join(GITLET_REPO, "message-journal");
+
+    /** Write-ahead journal of ref and stage updates in progress. */
+    static final File JOURNAL_FILE = Utils.join(GITLET_REPO, "journal");
+
+    /** Sparse-checkout patterns, absent when every path is checked out. */
+    static final File SPARSE_FILE = Utils.join(GITLET_REPO, "sparse-checkout");
+
+    /** Lock file guarding the repository against concurrent writers. */
+    static final File LOCK_FILE = Utils.join(GITLET_REPO, "lock");
+
+    /** Commit being merged while a merge with conflicts is resolved; the
+     *  next commit records it as its second parent. */
+    static final File MERGE_HEAD_FILE = Utils.join(GITLET_REPO, "merge-head");
+
+    /** Number of hash digits printed for each parent of a merge. */
+    static final int MERGE_ID = 7;
+
+    /** Directory naming the .gitlet directory of each remote. */
+    static final File REMOTES_DIR = Utils.join(GITLET_REPO, "remotes");
+
+    /** Number of hash digits printed by log --oneline. */
+    static final int ONELINE_ID = 7;
+
 
     /**Initializes gitlet repository for version-control system. */
     public void init() {
@@ -43,20 +107,20 @@ public class Gitlet implements Serializable {
             BRANCH_DIR.mkdirs();
             STAGING_AREA.mkdirs();
 
-            Commit c = new Commit(null, "initial commit", new HashMap<>());
-            String path = c.getCommitHash() + ".txt";
-            Utils.writeObject(Utils.join(COMMITS_DIR, path), c);
-
-
-            File headFile = Utils.join(BRANCH_DIR, "HEAD.txt");
-            Utils.writeContents(headFile, "master");
+            TREES_DIR.mkdirs();
+            MANIFESTS_DIR.mkdirs();
+            Commit c = new Commit(null, "initial commit",
+                    Tree.update(null, new HashMap<>()));
+            writeCommit(c);
+            graph().add(c);
 
 
-            File masterP = Utils.join(BRANCH_DIR, "master.txt");
-            Utils.writeContents(masterP, c.getCommitHash());
-
+            Journal tx = journal();
+            writeRef(tx, "HEAD", "master");
+            writeRef(tx, "master", c.getCommitHash());
             staging = new Stage();
-            Utils.writeObject(Utils.join(STAGING_AREA, "stage.txt"), staging);
+            writeStage(tx);
+            tx.commit();
         } else {
             System.out.println("A Gitlet version-control "
                     + "system already exists in the current directory.");
@@ -70,43 +134,168 @@ public class Gitlet implements Serializable {
         Commit curr = recentCommit();
         File a = Utils.join(CWD, name);
         if (a.exists()) {
-            staging = Utils.readObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), Stage.class);
-            byte[] contents = Utils.readContents(a);
-            String hash = Utils.sha1(contents);
+            staging = readStage();
+            String hash = staging.hash(name, a);
 
             if (staging.getRemoved().contains(name)) {
                 staging.getRemoved().remove(name);
-                Utils.writeObject(Utils.join(STAGING_AREA,
-                        "stage.txt"), staging);
+                writeStage();
             } else if (staging.getAdded().containsKey(name)
                     && staging.getAdded().get(name).equals(hash)) {
                 staging.getAdded().remove(name, hash);
-                Utils.writeObject(Utils.join(STAGING_AREA,
-                        "stage.txt"), staging);
+                writeStage();
                 System.out.println("File is up to date");
-            } else if (hash.equals(curr.getBlob().get(name))) {
-                Utils.writeObject(Utils.join(STAGING_AREA,
-                        "stage.txt"), staging);
+            } else if (hash.equals(curr.blob(name))) {
+                writeStage();
             } else {
-                File newBlob = Utils.join(BLOBS_DIR,
-                        hash + ".txt");
-                Utils.writeContents(newBlob, contents);
+                hash = BLOBS.putFile(a, hash);
+                staging.record(name, a, hash);
                 staging.getAdded().put(name, hash);
-                Utils.writeObject(Utils.join(STAGING_AREA,
-                        "stage.txt"), staging);
+                writeStage();
             }
         } else {
             System.out.println("File does not exist.");
         }
     }
 
+    /** Add many files at once.  Each of PATHS may name a file or a
+     *  directory, which adds every file beneath it; "." adds the whole
+     *  working tree.  Files are read and hashed in parallel, and the
+     *  staging area is read and saved only once.
+     * @param paths for files and directories to add.
+     */
+    public void addAll(String... paths) {
+        ArrayList<String> names = new ArrayList<>();
+        for (String path: paths) {
+            String name = workingPath(path);
+            if (name == null || !Utils.join(CWD, name).exists()) {
+                System.out.println("File does not exist.");
+                return;
+            }
+            if (name.isEmpty()) {
+                names.addAll(workingFiles());
+            } else {
+                collectFiles(Utils.join(CWD, name), name, names);
+            }
+        }
+        Commit curr = recentCommit();
+        staging = readStage();
+        ConcurrentHashMap<String, String> hashes = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Boolean> written = new ConcurrentHashMap<>();
+        names.parallelStream().forEach(name -> {
+            File file = Utils.join(CWD, name);
+            String hash = staging.cachedHash(name, file);
+            if (hash == null) {
+                hash = BLOBS.putFile(file);
+                written.put(hash, true);
+            }
+            hashes.put(name, hash);
+        });
+        for (String name: names) {
+            String hash = hashes.get(name);
+            File file = Utils.join(CWD, name);
+            if (staging.getRemoved().contains(name)) {
+                staging.getRemoved().remove(name);
+            } else if (hash.equals(curr.getBlob().get(name))) {
+                staging.getAdded().remove(name);
+            } else {
+                if (!written.containsKey(hash)) {
+                    hash = BLOBS.putFile(file, hash);
+                }
+                staging.getAdded().put(name, hash);
+            }
+            staging.record(name, file, hash);
+        }
+        writeStage();
+    }
+
+    /** Helper method returning PATH, relative to the working directory,
+     *  in normal form with '/' separators, so that "src/", "./src" and
+     *  "src" name the same files.  Returns "" for the working directory
+     *  itself, or null if PATH lies outside it.
+     *
+     * @param path for path given on the command line.
+     * @return the normalized path, or null.
+     */
+    static String workingPath(String path) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(file).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Helper method collecting the names of all plain files at or
+     *  beneath FILE, skipping the .gitlet directory.
+     *
+     * @param file for file or directory to collect.
+     * @param name for name of FILE relative to the working directory.
+     * @param names receives the collected names.
+     */
+    public static void collectFiles(File file, String name,
+                                    List<String> names) {
+        if (file.isFile()) {
+            names.add(name);
+        } else if (file.isDirectory() && !file.getName().equals(".gitlet")) {
+            long start = Trace.start();
+            String[] children = file.list();
+            if (children == null) {
+                return;
+            }
+            Trace.end(Trace.Op.LIST, start, children.length);
+            Arrays.sort(children);
+            for (String child: children) {
+                collectFiles(Utils.join(file, child),
+                        name.isEmpty() ? child : name + "/" + child, names);
+            }
+        }
+    }
+
+    /** Helper method listing every working file known to the daemon's
+     *  file monitor, so that the tree need not be walked.
+     *
+     * @return the sorted paths of all working files, or null if no
+     *         monitor is running or it is not synced.
+     */
+    static List<String> watchedFiles() {
+        Monitor monitor = Monitor.active();
+        return monitor == null ? null : monitor.files();
+    }
+
+    /** Helper method listing every file in the working directory, from
+     *  the file monitor if one is running.
+     *
+     * @return the sorted paths of all working files.
+     */
+    public static List<String> workingFiles() {
+        List<String> watched = watchedFiles();
+        if (watched != null) {
+            return watched;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        collectFiles(CWD, "", names);
+        Collections.sort(names);
+        return names;
+    }
+
     /** Commit changes made to working directory.
      * @param message for commit message.
      */
     public void commit(String message) {
-        staging = Utils.readObject(Utils.join(STAGING_AREA,
-                "stage.txt"), Stage.class);
+        String merged = MERGE_HEAD_FILE.isFile()
+            ? Utils.readContentsAsString(MERGE_HEAD_FILE) : null;
+        commit(message, merged);
+    }
+
+    /** Commit changes made to working directory, recording commit MERGED,
+     *  if not null, as the second parent.
+     * @param message for commit message.
+     * @param merged for the merged-in commit, or null.
+     */
+    private void commit(String message, String merged) {
+        staging = readStage();
         if (message.equals("")) {
             System.out.println("Please enter a commit message.");
             return;
@@ -115,55 +304,100 @@ public class Gitlet implements Serializable {
             System.out.println("No changes added to the commit.");
             return;
         } else {
-            HashMap<String, String> addedList = staging.getAdded();
-            ArrayList<String> removedList = staging.getRemoved();
-            ArrayList<String> changes =
-                    new ArrayList<>(addedList.keySet());
-            Commit recent = recentCommit();
-            HashMap<String, String> contents =
-                    duplicateBlobs(recent);
-            for (String item: changes) {
-                contents.put(item, addedList.get(item));
-            }
-            for (String item: removedList) {
-                contents.remove(item);
+            HashMap<String, String> changes =
+                    new HashMap<>(staging.getAdded());
+            for (String item: staging.getRemoved()) {
+                changes.put(item, null);
             }
-            Commit toCommit = new Commit(recent.getCommitHash(),
-                    message, contents);
+            Commit recent = recentCommit();
+            Commit toCommit = new Commit(recent.getCommitHash(), merged,
+                    message, Tree.update(recent.tree(), changes));
             String head = Utils.readContentsAsString(
                     Utils.join(BRANCH_DIR, "HEAD.txt"));
-            Utils.writeObject(Utils.join(COMMITS_DIR,
-                    toCommit.getCommitHash() + ".txt"),
-                    toCommit);
-            Utils.writeContents(Utils.join(BRANCH_DIR,
-                    head + ".txt"), toCommit.getCommitHash());
+            writeCommit(toCommit);
+            graph().add(toCommit);
+            Journal tx = journal();
+            writeRef(tx, head, toCommit.getCommitHash());
             staging.clearStage();
-            Utils.writeObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), staging);
+            writeStage(tx);
+            tx.commit();
+            MERGE_HEAD_FILE.delete();
         }
     }
 
 
 
-    /** Displays all past commits of CWD. */
-    public void log() {
-        Commit c = recentCommit();
-        String result = "";
-        while (c != null) {
-            result += "===" + "\n";
-            result += "commit " + c.getCommitHash() + "\n";
-            result += "Date: " + c.timeStamp() + "\n";
-            result += c.commitMsg() + "\n";
-            result += "\n";
-            if (c.parentHash() == null) {
+    /** Displays past commits of CWD along first parents, newest first,
+     *  as permitted by OPTIONS.  Commits are printed as they are visited,
+     *  and the walk stops once the count or date limit is reached.
+     *
+     * @param options for limits and format of the output.
+     */
+    public void log(LogOptions options) {
+        CommitGraph graph = graph();
+        int id = graphId(recentCommit().getCommitHash());
+        PrintWriter out = logWriter();
+        int printed = 0;
+        while (id != CommitGraph.NONE && printed < options.limit()) {
+            long time = graph.time(id);
+            if (options.tooOld(time)) {
                 break;
-            } else {
-                String parent = c.parentHash();
-                c = Utils.readObject(Utils.join(COMMITS_DIR,
-                        parent + ".txt"), Commit.class);
             }
+            if (!options.tooNew(time)) {
+                printLogEntry(out, readCommit(graph.hash(id)), options);
+                printed += 1;
+            }
+            id = graph.parent(id);
         }
-        System.out.println(result);
+        finishLog(out, options);
+    }
+
+    /** Return a buffered writer over the standard output for log output. */
+    private static PrintWriter logWriter() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                Utils.BUFFER_SIZE));
+    }
+
+    /** Print commit C to OUT in the format given by OPTIONS.
+     *
+     * @param out for log output.
+     * @param c for commit to print.
+     * @param options for output format.
+     */
+    private static void printLogEntry(PrintWriter out, Commit c,
+                                      LogOptions options) {
+        if (options.oneline()) {
+            out.print(c.getCommitHash().substring(0, ONELINE_ID));
+            out.print(' ');
+            out.print(c.commitMsg());
+            out.print('\n');
+            return;
+        }
+        out.print("===\n");
+        out.print("commit ");
+        out.print(c.getCommitHash());
+        out.print('\n');
+        if (c.secondParentHash() != null) {
+            out.print("Merge: ");
+            out.print(c.parentHash().substring(0, MERGE_ID));
+            out.print(' ');
+            out.print(c.secondParentHash().substring(0, MERGE_ID));
+            out.print('\n');
+        }
+        out.print("Date: ");
+        out.print(c.timeStamp());
+        out.print('\n');
+        out.print(c.commitMsg());
+        out.print("\n\n");
+    }
+
+    /** Finish log output OUT written with OPTIONS and flush it. */
+    private static void finishLog(PrintWriter out, LogOptions options) {
+        if (!options.oneline()) {
+            out.print('\n');
+        }
+        out.flush();
     }
 
     /** Retrieve a past commit, changing head pointer.
@@ -173,40 +407,26 @@ public class Gitlet implements Serializable {
         if (args.length == 3) {
             Commit lastCommit = recentCommit();
             String name = args[2];
-            if (!lastCommit.getBlob().containsKey(args[2])) {
+            String hash = lastCommit.blob(name);
+            if (hash == null) {
                 System.out.println("File does not exist in that commit.");
                 return;
             }
-            String hash = lastCommit.getBlob().get(name);
-            File getBlob = Utils.join(BLOBS_DIR, hash + ".txt");
-            byte[] contents = Utils.readContents(getBlob);
-            File currFile = Utils.join(CWD, name);
-            Utils.writeContents(currFile, contents);
+            BLOBS.copyTo(hash, Utils.join(CWD, name));
         }
         if (args.length == 4) {
-            String hashID = args[1];
+            String hashID = resolveCommit(args[1]);
             String name = args[3];
-            List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
-            for (String realID: allCommits) {
-                if (realID.contains(hashID)) {
-                    hashID = realID.substring(0, realID.length() - 4);
-                }
-            }
-            File target = Utils.join(COMMITS_DIR, hashID + ".txt");
-            if (!target.exists()) {
-                System.out.println("No commit with that id exists.");
+            if (hashID == null) {
                 return;
             }
-            Commit tarCommit = Utils.readObject(target, Commit.class);
-            if (!tarCommit.getBlob().containsKey(name)) {
+            Commit tarCommit = readCommit(hashID);
+            String blobHash = tarCommit.blob(name);
+            if (blobHash == null) {
                 System.out.println("File does not exist in that commit.");
                 return;
             }
-            String blobHash = tarCommit.getBlob().get(name);
-            File getBlob = Utils.join(BLOBS_DIR,
-                    blobHash + ".txt");
-            byte[] contents = Utils.readContents(getBlob);
-            Utils.writeContents(Utils.join(CWD, name), contents);
+            BLOBS.copyTo(blobHash, Utils.join(CWD, name));
         }
         if (args.length == 2) {
             checkoutHelper(args);
@@ -230,48 +450,17 @@ public class Gitlet implements Serializable {
             return;
         } else {
             String commitPath = Utils.readContentsAsString(branch);
-            Commit myCommit = Utils.readObject(Utils.join(COMMITS_DIR,
-                    commitPath + ".txt"), Commit.class);
-            Commit currCommit = recentCommit();
-            HashMap<String, String> myBlobs = myCommit.getBlob();
-            HashMap<String, String> currBlobs = currCommit.getBlob();
-            List<String> workingDir = Utils.plainFilenamesIn(CWD);
-            ArrayList<String> files = new ArrayList<>();
-            for (String name: workingDir) {
-                if (name.endsWith(".txt")) {
-                    files.add(name);
-                }
-            }
-            for (String name: files) {
-                if (myBlobs.containsKey(name)
-                        && !currBlobs.containsKey(name)) {
-                    System.out.println("There is an"
-                            + " untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                    return;
-                }
-            }
-            for (String name: files) {
-                if (!myBlobs.containsKey(name)
-                        && currBlobs.containsKey(name)) {
-                    Utils.restrictedDelete(name);
-                }
-            }
-            for (String name: myBlobs.keySet()) {
-                String hash = myBlobs.get(name);
-                File blob = Utils.join(BLOBS_DIR,
-                        hash + ".txt");
-                byte[] contents = Utils.readContents(blob);
-                Utils.writeContents(Utils.join(CWD, name),
-                        contents);
+            Commit myCommit = readCommit(commitPath);
+            if (!checkoutCommit(recentCommit(), myCommit)) {
+                return;
             }
-            staging = Utils.readObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), Stage.class);
+            staging = readStage();
             staging.clearStage();
-            Utils.writeObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), staging);
-            Utils.writeContents(Utils.join(BRANCH_DIR,
-                    "HEAD.txt"), branchName);
+            Journal tx = journal();
+            writeStage(tx);
+            writeRef(tx, "HEAD", branchName);
+            tx.commit();
+            MERGE_HEAD_FILE.delete();
         }
     }
 
@@ -280,31 +469,20 @@ public class Gitlet implements Serializable {
      * @param name for file name.
      */
     public void remove(String name) {
-        staging = Utils.readObject(Utils.join(STAGING_AREA,
-                "stage.txt"), Stage.class);
+        staging = readStage();
         Commit headCommit = recentCommit();
-        HashMap<String, String> inCommit = duplicateBlobs(headCommit);
-        boolean tracked = false;
-        for (String file: inCommit.keySet()) {
-            if (file.equals(name)) {
-                tracked = true;
-                break;
-            }
-        }
+        boolean tracked = headCommit.blob(name) != null;
         if (staging.getAdded().containsKey(name)) {
             staging.getAdded().remove(name);
-            Utils.writeObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), staging);
+            writeStage();
         } else if (tracked) {
             staging.remove(name);
-            Utils.restrictedDelete(name);
+            deleteWorkingFile(name);
             if (staging.getAdded().containsKey(name)) {
                 staging.getAdded().remove(name);
-                Utils.writeObject(Utils.join(STAGING_AREA,
-                        "stage.txt"), staging);
+                writeStage();
             }
-            Utils.writeObject(Utils.join(STAGING_AREA,
-                    "stage.txt"), staging);
+            writeStage();
         } else {
             System.out.println("No reason to"
                     + " remove the file.");
@@ -312,57 +490,82 @@ public class Gitlet implements Serializable {
         }
     }
 
-    /** Finds all commits with given message.
-     * @param message for commit message.
+    /** Finds all commits with given message.  ARGS is either the exact
+     *  message, "--word WORDS" for messages containing every word of
+     *  WORDS, or "--substring TEXT" for messages containing TEXT.  Queries
+     *  are answered from the message index, which is rebuilt if it is
+     *  missing commits.
+     *
+     * @param args for query.
      */
-    public void find(String message) {
-        List<String> commits = Utils.plainFilenamesIn(COMMITS_DIR);
-        int count = 0;
-        for (String commit: commits) {
-            Commit c = Utils.readObject(Utils.join(COMMITS_DIR,
-                    commit), Commit.class);
-            if (c.commitMsg().equals(message)) {
-                System.out.println(c.getCommitHash());
-                count++;
-            }
+    public void find(String... args) {
+        MessageIndex index = messageIndex();
+        CommitGraph graph = graph();
+        graph.load();
+        if (index.size() < graph.size()) {
+            index.rebuild(COMMITS);
         }
-        if (count == 0) {
+        List<String> found;
+        if (args.length == 1) {
+            found = index.exact(args[0]);
+        } else if (args[0].equals("--word")) {
+            found = index.tokens(args[1]);
+        } else if (args[0].equals("--substring")) {
+            found = index.substring(args[1]);
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        for (String hash : found) {
+            System.out.println(hash);
+        }
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
 
-    /** Prints out all information about all commits ever made. */
-    public void globalLog() {
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
-        String result = "";
-        for (String name: allCommits) {
-            Commit c = Utils.readObject(Utils.join(
-                    COMMITS_DIR, name), Commit.class);
-            result += "===" + "\n";
-            result += "commit " + c.getCommitHash() + "\n";
-            result += "Date: " + c.timeStamp() + "\n";
-            result += c.commitMsg() + "\n";
-            result += "\n";
+    /** Prints out information about every commit ever made, newest
+     *  first by the times in the commit graph, as permitted by OPTIONS.
+     *  Timestamps are read from the graph, so commits outside the date
+     *  range are never decoded.  The graph is rebuilt only if its rows
+     *  do not match the count in its header.
+     *
+     * @param options for limits and format of the output.
+     */
+    public void globalLog(LogOptions options) {
+        CommitGraph graph = graph();
+        graph.load();
+        if (graph.stale()) {
+            graph.rebuild(COMMITS);
         }
-        System.out.println(result);
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < graph.size(); id += 1) {
+            long time = graph.time(id);
+            if (!options.tooNew(time) && !options.tooOld(time)) {
+                ids.add(id);
+            }
+        }
+        ids.sort((x, y) -> graph.time(x) != graph.time(y)
+                 ? Long.compare(graph.time(y), graph.time(x))
+                 : Integer.compare(y, x));
+        PrintWriter out = logWriter();
+        for (int k = 0; k < ids.size() && k < options.limit(); k += 1) {
+            printLogEntry(out, readCommit(graph.hash(ids.get(k))), options);
+        }
+        finishLog(out, options);
     }
 
     /** Prints out current status of repo, such as which
      * branches exist/files staged for addition, etc.
      */
     public void status() {
-        staging = Utils.readObject(Utils.join(STAGING_AREA,
-                "stage.txt"), Stage.class);
+        staging = readStage();
         String head = Utils.readContentsAsString(
                 Utils.join(BRANCH_DIR, "HEAD.txt"));
         String result = "=== Branches ===" + "\n";
-        List<String> branches = Utils.plainFilenamesIn(BRANCH_DIR);
-        for (String branch: branches) {
-            branch = branch.substring(0, branch.length() - 4);
+        for (String branch: branchNames(BRANCH_DIR)) {
             if (branch.equals(head)) {
                 result += "*" + branch;
-            } else if (branch.equals("HEAD")) {
-                continue;
             } else {
                 result += branch;
             }
@@ -383,10 +586,309 @@ public class Gitlet implements Serializable {
             result += "\n";
         }
         result += "\n" + "=== Modifications Not Staged For Commit ===" + "\n";
+        HashMap<String, String> tracked = recentCommit().getBlob();
+        ArrayList<String> untracked = new ArrayList<>();
+        for (String name: modifiedFiles(tracked, untracked)) {
+            result += name + "\n";
+        }
         result += "\n" + "=== Untracked Files ===" + "\n";
+        for (String name: untracked) {
+            result += name + "\n";
+        }
+        if (staging.statsChanged()) {
+            RepoLock.Cache cache = RepoLock.cache();
+            try {
+                writeStage();
+            } finally {
+                cache.close();
+            }
+        }
         System.out.println(result);
     }
 
+    /** Helper method to find working files that differ from the stage
+     *  and current commit.  Hashes come from the stage's stat cache, so
+     *  unchanged files are not read, and while the daemon's file monitor
+     *  runs, not even examined.  Tracked files outside the
+     *  sparse-checkout patterns are not reported as deleted.
+     *
+     * @param tracked for blobs of the current commit.
+     * @param untracked receives the names of untracked files, sorted.
+     * @return sorted entries of the form "NAME (modified)" or
+     *         "NAME (deleted)".
+     */
+    public ArrayList<String> modifiedFiles(HashMap<String, String> tracked,
+                                           ArrayList<String> untracked) {
+        TreeMap<String, String> result = new TreeMap<>();
+        HashMap<String, String> added = staging.getAdded();
+        ArrayList<String> removed = staging.getRemoved();
+        SparseCheckout sparse = sparse();
+        List<String> watched = watchedFiles();
+        HashSet<String> present =
+            watched == null ? null : new HashSet<>(watched);
+        for (String name: tracked.keySet()) {
+            File file = Utils.join(CWD, name);
+            if (present == null ? !file.isFile() : !present.contains(name)) {
+                if (!removed.contains(name) && sparse.includes(name)) {
+                    result.put(name, " (deleted)");
+                }
+            } else if (!added.containsKey(name)
+                    && !tracked.get(name).equals(staging.hash(name, file))) {
+                result.put(name, " (modified)");
+            }
+        }
+        for (String name: added.keySet()) {
+            File file = Utils.join(CWD, name);
+            if (present == null ? !file.isFile() : !present.contains(name)) {
+                if (sparse.includes(name)) {
+                    result.put(name, " (deleted)");
+                }
+            } else if (!added.get(name).equals(staging.hash(name, file))) {
+                result.put(name, " (modified)");
+            }
+        }
+        for (String name: workingFiles()) {
+            if ((!tracked.containsKey(name) && !added.containsKey(name))
+                    || removed.contains(name)) {
+                untracked.add(name);
+            }
+        }
+        ArrayList<String> entries = new ArrayList<>();
+        for (String name: result.keySet()) {
+            entries.add(name + result.get(name));
+        }
+        return entries;
+    }
+
+    /** Prints the paths that differ between two commits, or between a
+     *  commit (by default the current one) and the working directory.
+     *  Renamed files are detected by content.
+     * @param ids for zero, one or two commit ids.
+     */
+    public void diff(String... ids) {
+        List<DiffEntry> entries;
+        if (ids.length == 2) {
+            String from = resolveCommit(ids[0]);
+            String to = from == null ? null : resolveCommit(ids[1]);
+            if (to == null) {
+                return;
+            }
+            entries = DiffEngine.diffTrees(readCommit(from).tree(),
+                    readCommit(to).tree(), true);
+        } else {
+            Commit from = recentCommit();
+            if (ids.length == 1) {
+                String hash = resolveCommit(ids[0]);
+                if (hash == null) {
+                    return;
+                }
+                from = readCommit(hash);
+            }
+            staging = readStage();
+            entries = DiffEngine.detectRenames(
+                    DiffEngine.diffWorkingTree(from.tree(), staging, false));
+            if (staging.statsChanged()) {
+                RepoLock.Cache cache = RepoLock.cache();
+                try {
+                    writeStage();
+                } finally {
+                    cache.close();
+                }
+            }
+        }
+        for (DiffEntry e: entries) {
+            System.out.println(e);
+        }
+    }
+
+    /** Lists, sets or clears the sparse-checkout patterns.  ARGS is
+     *  "list", "set" followed by the patterns, or "disable".  When the
+     *  patterns change, tracked and staged files they now include are
+     *  written to the working directory, and unmodified files they now
+     *  exclude are deleted from it.
+     *
+     * @param args for subcommand and patterns.
+     */
+    public void sparseCheckout(String... args) {
+        SparseCheckout old = sparse();
+        if (args[0].equals("list")) {
+            for (String pattern: old.patterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        }
+        SparseCheckout now = args[0].equals("set")
+            ? new SparseCheckout(Arrays.asList(args).subList(1, args.length))
+            : new SparseCheckout();
+        staging = readStage();
+        TreeMap<String, String> changes = new TreeMap<>();
+        HashMap<String, String> tracked =
+            new HashMap<>(recentCommit().getBlob());
+        tracked.putAll(staging.getAdded());
+        tracked.keySet().removeAll(staging.getRemoved());
+        for (Map.Entry<String, String> e: tracked.entrySet()) {
+            String name = e.getKey();
+            File file = Utils.join(CWD, name);
+            if (now.includes(name)) {
+                if (!file.exists()) {
+                    changes.put(name, e.getValue());
+                }
+            } else if (old.includes(name) && file.isFile()
+                    && e.getValue().equals(staging.hash(name, file))) {
+                changes.put(name, null);
+            }
+        }
+        now.write(SPARSE_FILE);
+        Checkout.apply(changes, CWD, BLOBS);
+        if (staging.statsChanged()) {
+            writeStage();
+        }
+    }
+
+    /** Rolls all loose commits and blobs into packfiles. */
+    public void pack() {
+        COMMITS.pack();
+        BLOBS.pack();
+        TREES.pack();
+    }
+
+    /** Deletes the objects that no branch or staged file can reach, once
+     *  they are older than GRACE milliseconds, and repacks every store
+     *  without them if REPACK.
+     *
+     * @param grace for grace period in milliseconds.
+     * @param repack for whether to repack.
+     */
+    public void gc(long grace, boolean repack) {
+        new GarbageCollector(grace, repack).collect();
+    }
+
+    /** Records NAME as a remote whose .gitlet directory is DIR, in which
+     *  "/" separates path components.
+     *
+     * @param name for remote name.
+     * @param dir for path of the remote's .gitlet directory.
+     */
+    public void addRemote(String name, String dir) {
+        File remote = Utils.join(REMOTES_DIR, name);
+        if (remote.exists()) {
+            System.out.println("A remote with that name already exists.");
+            return;
+        }
+        REMOTES_DIR.mkdirs();
+        Utils.writeContents(remote, dir.replace("/", File.separator));
+    }
+
+    /** Forgets remote NAME.
+     *
+     * @param name for remote name.
+     */
+    public void removeRemote(String name) {
+        if (!Utils.join(REMOTES_DIR, name).delete()) {
+            System.out.println("A remote with that name does not exist.");
+        }
+    }
+
+    /** Sends the current branch's commits that remote NAME lacks to its
+     *  branch BRANCH, with the objects they need, and points that branch
+     *  at the current head.  The remote branch's head must already be in
+     *  the current history.
+     *
+     * @param name for remote name.
+     * @param branch for remote branch name.
+     */
+    public void push(String name, String branch) {
+        File dir = remoteDir(name);
+        if (dir == null) {
+            return;
+        }
+        try (RepoLock lock = RepoLock.tryAcquire(
+                Remote.in(dir, LOCK_FILE), false)) {
+            if (lock == null) {
+                System.out.println("Remote repository is busy.");
+                return;
+            }
+            recover(dir);
+            Remote remote = Remote.open(dir);
+            String head = recentCommit().getCommitHash();
+            String theirs = remote.head(branch);
+            if (theirs != null && (!COMMITS.contains(theirs)
+                    || !graph().isAncestor(graphId(theirs),
+                            graphId(head)))) {
+                System.out.println("Please pull down remote changes "
+                        + "before pushing.");
+                return;
+            }
+            Remote.local().send(head, remote);
+            remote.setHead(branch, head);
+        }
+    }
+
+    /** Copies the commits of branch BRANCH of remote NAME that this
+     *  repository lacks, with the objects they need, and points branch
+     *  NAME/BRANCH at its head.
+     *
+     * @param name for remote name.
+     * @param branch for remote branch name.
+     * @return false if nothing was fetched because of an error.
+     */
+    public boolean fetch(String name, String branch) {
+        File dir = remoteDir(name);
+        if (dir == null) {
+            return false;
+        }
+        try (RepoLock lock = RepoLock.tryAcquire(
+                Remote.in(dir, LOCK_FILE), true)) {
+            if (lock == null) {
+                System.out.println("Remote repository is busy.");
+                return false;
+            }
+            Remote remote = Remote.open(dir);
+            String theirs = remote.head(branch);
+            if (theirs == null) {
+                System.out.println("That remote does not have that branch.");
+                return false;
+            }
+            remote.send(theirs, Remote.local());
+            Journal tx = journal();
+            writeRef(tx, name + "/" + branch, theirs);
+            tx.commit();
+            return true;
+        }
+    }
+
+    /** Fetches branch BRANCH of remote NAME and merges it into the
+     *  current branch.
+     *
+     * @param name for remote name.
+     * @param branch for remote branch name.
+     */
+    public void pull(String name, String branch) {
+        if (fetch(name, branch)) {
+            merge(name + "/" + branch);
+        }
+    }
+
+    /** Helper method returning the .gitlet directory of remote NAME,
+     *  printing an error if there is no such remote or directory.
+     *
+     * @param name for remote name.
+     * @return the directory, or null.
+     */
+    private File remoteDir(String name) {
+        File remote = Utils.join(REMOTES_DIR, name);
+        if (!remote.isFile()) {
+            System.out.println("A remote with that name does not exist.");
+            return null;
+        }
+        File dir = new File(Utils.readContentsAsString(remote));
+        if (!dir.isDirectory()) {
+            System.out.println("Remote directory not found.");
+            return null;
+        }
+        return dir;
+    }
+
     /** Creates a new branch with given branch name.
      *
      * @param name for branch name.
@@ -398,7 +900,9 @@ public class Gitlet implements Serializable {
             return;
         } else {
             Commit current = recentCommit();
-            Utils.writeContents(newBranch, current.getCommitHash());
+            Journal tx = journal();
+            writeRef(tx, name, current.getCommitHash());
+            tx.commit();
         }
     }
 
@@ -423,59 +927,26 @@ public class Gitlet implements Serializable {
 
     /** Checks out files tracked by given commit ID,
      *  removes tracked files not present in that commit.
-     * @param hash for commit hash.
+     * @param id for full or abbreviated commit hash.
      */
-    public void reset(String hash) {
-        List<String> allCommits = Utils.plainFilenamesIn(COMMITS_DIR);
-        for (String realID: allCommits) {
-            if (realID.contains(hash)) {
-                hash = realID.substring(0, realID.length() - 4);
-            }
-        }
-        File commitFile = Utils.join(COMMITS_DIR, hash + ".txt");
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
+    public void reset(String id) {
+        String hash = resolveCommit(id);
+        if (hash == null) {
             return;
         }
-        Commit myCommit = Utils.readObject(commitFile, Commit.class);
-        Commit currCommit = recentCommit();
-        HashMap<String, String> myBlobs = myCommit.getBlob();
-        HashMap<String, String> currBlobs = currCommit.getBlob();
-        List<String> workingDir = Utils.plainFilenamesIn(CWD);
-        ArrayList<String> files = new ArrayList<>();
-        for (String name: workingDir) {
-            if (name.endsWith(".txt")) {
-                files.add(name);
-            }
-        }
-        for (String name: files) {
-            if (myBlobs.containsKey(name) && !currBlobs.containsKey(name)) {
-                System.out.println("There is an untracked"
-                        + " file in the way; delete it,"
-                        + " or add and commit it first.");
-                return;
-            }
-        }
-        for (String name: files) {
-            if (!myBlobs.containsKey(name) && currBlobs.containsKey(name)) {
-                Utils.restrictedDelete(name);
-            }
-        }
-        for (String name: myBlobs.keySet()) {
-            String hashCode = myBlobs.get(name);
-            File blob = Utils.join(BLOBS_DIR, hashCode + ".txt");
-            byte[] contents = Utils.readContents(blob);
-            Utils.writeContents(Utils.join(CWD, name), contents);
+        Commit myCommit = readCommit(hash);
+        if (!checkoutCommit(recentCommit(), myCommit)) {
+            return;
         }
-        staging = Utils.readObject(Utils.join(STAGING_AREA,
-                "stage.txt"), Stage.class);
+        staging = readStage();
         staging.clearStage();
-        Utils.writeObject(Utils.join(STAGING_AREA,
-                "stage.txt"), staging);
         String headPath = Utils.readContentsAsString(
                 Utils.join(BRANCH_DIR, "HEAD.txt"));
-        Utils.writeContents(Utils.join(BRANCH_DIR,
-                headPath + ".txt"), hash);
+        Journal tx = journal();
+        writeStage(tx);
+        writeRef(tx, headPath, hash);
+        tx.commit();
+        MERGE_HEAD_FILE.delete();
     }
 
     /** Merges files from the given branch to the current branch.
@@ -485,181 +956,138 @@ public class Gitlet implements Serializable {
     public void merge(String name) {
         if (!mergeErrors(name)) {
             return;
-        } else if (!mergeUntracked(name)) {
-            return;
         } else {
             String branchHash = Utils.readContentsAsString(
                     Utils.join(BRANCH_DIR, name + ".txt"));
-            Commit branchP = Utils.readObject(Utils.join(COMMITS_DIR,
-                    branchHash + ".txt"), Commit.class);
+            Commit branchP = readCommit(branchHash);
             Commit currCommit = recentCommit();
-            HashMap<String, Commit> mergeTree = mergeTreeBuilder();
-            Commit split = null;
-            while (branchP != null && Utils.readObject(Utils.join(
-                            COMMITS_DIR, branchP.getCommitHash() + ".txt"),
-                    Commit.class) != null) {
-                if (mergeTree.containsKey(branchP.getCommitHash())) {
-                    split = mergeTree.get(branchP.getCommitHash());
-                    break;
-                }
-                branchP = Utils.readObject(Utils.join(COMMITS_DIR,
-                        branchP.parentHash() + ".txt"), Commit.class);
-            }
-            if (mergeTree.containsKey(branchHash)) {
+            CommitGraph graph = graph();
+            int currId = graphId(currCommit.getCommitHash());
+            int branchId = graphId(branchHash);
+            if (graph.isAncestor(branchId, currId)) {
                 System.out.println("Given branch is an ancestor"
                         + " of the current branch.");
                 return;
-            } else if (split.getCommitHash().equals(
-                    currCommit.getCommitHash())) {
-                String head = Utils.readContentsAsString(
-                        Utils.join(BRANCH_DIR, "HEAD.txt"));
-                Utils.writeContents(Utils.join(BRANCH_DIR,
-                        head + ".txt"));
+            } else if (graph.isAncestor(currId, branchId)) {
+                reset(branchHash);
                 System.out.println("Current branch fast-forwarded.");
                 return;
             }
-            mergeHelp(branchHash, split, branchP);
-            if (conflictDet(currCommit, branchP, split, branchHash)) {
+            int splitId = graph.splitPoint(currId, branchId);
+            if (splitId == CommitGraph.NONE) {
+                System.out.println("Given branch shares no history with"
+                        + " the current branch.");
+                return;
+            }
+            Commit split = readCommit(graph.hash(splitId));
+            if (!mergeUntracked(currCommit, branchP, split)) {
+                return;
+            } else if (mergeCommits(currCommit, branchP, split)) {
+                Utils.writeContents(MERGE_HEAD_FILE, branchHash);
                 System.out.println("Encountered a merge conflict.");
                 return;
             } else {
                 String head = Utils.readContentsAsString(
                         Utils.join(BRANCH_DIR, "HEAD.txt"));
-                commit("Merged " + name + " into " + head + ".");
+                commit("Merged " + name + " into " + head + ".", branchHash);
             }
         }
     }
 
-    /**Helper method to determine conflict or not.
+    /** Helper method applying the changes made on commit BRANCH since
+     *  SPLIT to the working directory and staging area, where CURR is
+     *  the current commit.  Both sides are diffed against the split point
+     *  once; paths changed only on the branch side are taken from it, and
+     *  paths changed differently on both sides are merged line by line,
+     *  conflicting only where both sides changed the same lines.
      *
      * @param curr for current commit.
      * @param branch for branch commit.
      * @param split for split point commit.
-     * @param hash for branch hash.
-     * @return boolean indicating if there's merge conflict.
+     * @return true iff there was a merge conflict.
      */
-    public boolean conflictDet(Commit curr, Commit branch,
-                               Commit split, String hash) {
+    public boolean mergeCommits(Commit curr, Commit branch, Commit split) {
+        TreeMap<String, String> ours = DiffEngine.changes(
+                DiffEngine.diffTrees(split.tree(), curr.tree(), false));
+        TreeMap<String, String> theirs = DiffEngine.changes(
+                DiffEngine.diffTrees(split.tree(), branch.tree(), false));
+        staging = readStage();
+        SparseCheckout sparse = sparse();
         boolean conflict = false;
-        for (String file: curr.getBlob().keySet()) {
-            String bComContents = branch.getBlob().get(file);
-            String currContents = curr.getBlob().get(file);
-            if (split.getBlob().containsKey(file)
-                    && branch.getBlob().containsKey(file)) {
-                String splitContents = split.getBlob().get(file);
-                if (!splitContents.equals(bComContents)
-                        || !currContents.equals(bComContents)
-                        || !splitContents.equals(currContents)) {
-                    writeConflict2(currContents, bComContents, file);
-                    conflict = true;
+        for (String file: theirs.keySet()) {
+            String bHash = theirs.get(file);
+            if (!ours.containsKey(file)) {
+                if (bHash == null) {
+                    staging.remove(file);
+                    if (sparse.includes(file)) {
+                        deleteWorkingFile(file);
+                    }
+                } else {
+                    if (sparse.includes(file)) {
+                        BLOBS.copyTo(bHash, Utils.join(CWD, file));
+                    }
+                    staging.add(file, bHash);
                 }
-                if (splitContents.equals(currContents)
-                        && !splitContents.equals(bComContents)) {
-                    checkout("checkout", hash, "--", file);
-                    add(file);
+            } else if (!Objects.equals(ours.get(file), bHash)) {
+                String oHash = ours.get(file);
+                if (oHash == null || bHash == null) {
+                    writeConflict(oHash, bHash, file);
+                    staging.add(file,
+                            BLOBS.putFile(Utils.join(CWD, file)));
+                    conflict = true;
+                } else {
+                    conflict |= mergeFile(file, split.blob(file),
+                            oHash, bHash, sparse);
                 }
-            } else if (split.getBlob().containsKey(file)
-                    && !branch.getBlob().containsKey(file)
-                    && !curr.getBlob().get(file).equals(
-                    split.getBlob().get(file))) {
-                writeConflict1(currContents, bComContents, file);
-                conflict = true;
             }
         }
+        writeStage();
         return conflict;
     }
 
-    /** Helper for merge.
+    /** Helper method merging versions OHASH and BHASH of FILE, whose
+     *  version at the split point is SHASH, line by line and staging the
+     *  result.  A file outside the sparse-checkout patterns SPARSE is
+     *  merged in a temporary file and only written to the working
+     *  directory if it conflicts.
      *
-     * @param hash for branch hash.
-     * @param splitP for split point commit.
-     * @param branchCom for branch commit.
+     * @param file for file name.
+     * @param sHash for blob at the split point.
+     * @param oHash for blob of the current commit.
+     * @param bHash for blob of the branch commit.
+     * @param sparse for sparse-checkout patterns.
+     * @return true iff the versions conflict.
      */
-    public void mergeHelp(String hash, Commit splitP, Commit branchCom) {
-        Commit currCommit = recentCommit();
-        ArrayList<String> sFiles = new ArrayList<>(
-                splitP.getBlob().keySet());
-        ArrayList<String> bFiles = new ArrayList<>(
-                branchCom.getBlob().keySet());
-        for (String file: bFiles) {
-            if (!sFiles.contains(file)) {
-                checkout("checkout", hash, "--", file);
-                add(file);
-            }
+    private boolean mergeFile(String file, String sHash, String oHash,
+                              String bHash, SparseCheckout sparse) {
+        File dest = Utils.join(CWD, file);
+        if (sparse.includes(file)) {
+            boolean conflict = Merge3.merge(BLOBS, sHash, oHash, bHash, dest);
+            staging.add(file, BLOBS.putFile(dest));
+            return conflict;
         }
-        for (String file: bFiles) {
-            if (currCommit.getBlob().containsKey(file)) {
-                String sHash = splitP.getBlob().get(file);
-                String cHash = currCommit.getBlob().get(file);
-                if (sHash.equals(cHash) && !bFiles.contains(file)) {
-                    remove(file);
-                }
-            }
+        File temp = Utils.join(GITLET_REPO, "merge.tmp");
+        boolean conflict = Merge3.merge(BLOBS, sHash, oHash, bHash, temp);
+        staging.add(file, BLOBS.putFile(temp));
+        if (conflict) {
+            dest.getParentFile().mkdirs();
+            Utils.rename(temp, dest);
+        } else {
+            temp.delete();
         }
+        return conflict;
     }
 
-    /** Helper method to write contents of case 1.
-     *
-     * @param currContents contents of current commit.
-     * @param bContents contents of intended branch commit.
-     * @param file file to be modified.
-     */
-    public void writeConflict1(String currContents,
-                               String bContents, String file) {
-        File workFile = Utils.join(CWD, file);
-        String header = "<<<<<<< HEAD" + "\n";
-        String bars = "=======" + "\n";
-        String c = Utils.readContentsAsString(Utils.join(
-                BLOBS_DIR, currContents + ".txt"));
-        String b = Utils.readContentsAsString(Utils.join(
-                BLOBS_DIR, bContents + ".txt"));
-        String arrows = ">>>>>>>\n";
-        String result = header + c + "\n" + bars + b + "\n" + arrows;
-        Utils.writeContents(workFile, result);
-    }
-
-    /** Helper method to write contents of case 2.
+    /** Helper method to write a conflicted file.
      *
-     * @param currContents contents of current commit.
-     * @param bContents contents of intended branch commit.
+     * @param currContents blob of current commit, or null if absent.
+     * @param bContents blob of intended branch commit, or null if absent.
      * @param file file to be modified.
      */
-    public void writeConflict2(String currContents,
-                               String bContents, String file) {
-        File workFile = Utils.join(CWD, file);
-        String header = "<<<<<<< HEAD" + "\n";
-        String bars = "=======";
-        String c = Utils.readContentsAsString(Utils.join(
-                BLOBS_DIR, currContents + ".txt"));
-        String b = Utils.readContentsAsString(Utils.join(
-                BLOBS_DIR, bContents + ".txt"));
-        String arrows = ">>>>>>>\n";
-        String result = header + c + bars + "\n" + b + arrows;
-        Utils.writeContents(workFile, result);
-    }
-
-    /** Helper method to build commit tree and find split point.
-     *
-     * @return a split point of two branches.
-     */
-    public HashMap<String, Commit> mergeTreeBuilder() {
-        HashMap<String, Commit> mergeTree = new HashMap<String, Commit>();
-        Commit currP = recentCommit();
-        while (currP != null && Utils.readObject(Utils.join(COMMITS_DIR,
-                currP.getCommitHash() + ".txt"), Commit.class)
-                != null) {
-            Commit currCommit = Utils.readObject(Utils.join
-                    (COMMITS_DIR, currP.getCommitHash() + ".txt"),
-                    Commit.class);
-            mergeTree.put(currP.getCommitHash(), currCommit);
-            if (currP.parentHash() != null) {
-                currP = Utils.readObject(Utils.join(COMMITS_DIR,
-                        currP.parentHash() + ".txt"), Commit.class);
-            } else {
-                break;
-            }
-        }
-        return mergeTree;
+    public void writeConflict(String currContents,
+                              String bContents, String file) {
+        Merge3.conflict(BLOBS, currContents, bContents,
+                Utils.join(CWD, file));
     }
 
     /** Helper method to throw errors in merge.
@@ -678,8 +1106,7 @@ public class Gitlet implements Serializable {
             System.out.println("A branch with that name does not exist.");
             return false;
         } else if (thisBranch.exists() && !name.equals(currBranch)) {
-            staging = Utils.readObject(Utils.join
-                    (STAGING_AREA, "stage.txt"), Stage.class);
+            staging = readStage();
             if (!staging.getAdded().isEmpty()
                     || !staging.getRemoved().isEmpty()) {
                 System.out.println("You have uncommitted changes.");
@@ -689,36 +1116,35 @@ public class Gitlet implements Serializable {
         return true;
     }
 
-    /** Print error for when there are untracked files.
+    /** Print error for when an untracked file is in the way of merging
+     *  commit BRANCH into the current commit CURR, whose split point is
+     *  SPLIT.  Every path the branch side would write is checked, before
+     *  anything is written.
      *
-     * @param name for branch name.
-     * @return boolean indicating if there are untracked files.
-     */
-    public boolean mergeUntracked(String name) {
-        boolean isTracked = true;
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
-        ArrayList<String> normFiles = new ArrayList<>();
-        for (String file: cwdFiles) {
-            if (file.endsWith(".txt")) {
-                normFiles.add(file);
-            }
-        }
-        String myCommitHash = Utils.readContentsAsString(
-                Utils.join(BRANCH_DIR, name + ".txt"));
-        Commit branchCommit = Utils.readObject(Utils.join(COMMITS_DIR,
-                myCommitHash + ".txt"), Commit.class);
-        Commit currCommit = recentCommit();
-        HashMap<String, String> currBlobs = currCommit.getBlob();
-        HashMap<String, String> branchBlobs = branchCommit.getBlob();
-        for (String file: normFiles) {
-            if (!currBlobs.containsKey(file)
-                    && branchBlobs.containsKey(file)) {
+     * @param curr for current commit.
+     * @param branch for branch commit.
+     * @param split for split point commit.
+     * @return boolean indicating if there are no untracked files in the
+     *         way.
+     */
+    public boolean mergeUntracked(Commit curr, Commit branch, Commit split) {
+        TreeMap<String, String> ours = DiffEngine.changes(
+                DiffEngine.diffTrees(split.tree(), curr.tree(), false));
+        SparseCheckout sparse = sparse();
+        for (DiffEntry e: DiffEngine.diffTrees(split.tree(), branch.tree(),
+                false)) {
+            String file = e.path();
+            String currHash = ours.containsKey(file)
+                ? ours.get(file) : e.oldHash();
+            if (e.newHash() != null && currHash == null
+                    && (sparse.includes(file) || ours.containsKey(file))
+                    && Utils.join(CWD, file).exists()) {
                 System.out.println("There is an untracked file in the "
                         + "way; delete it, or add and commit it first.");
-                isTracked = false;
+                return false;
             }
         }
-        return isTracked;
+        return true;
     }
 
     /** Helper method meant for retrieving most recent commit.
@@ -731,21 +1157,250 @@ public class Gitlet implements Serializable {
         File myCommit = Utils.join(BRANCH_DIR,
                 head + ".txt");
         String commitHash = Utils.readContentsAsString(myCommit);
-        return Utils.readObject(Utils.join(COMMITS_DIR,
-                commitHash + ".txt"), Commit.class);
+        return readCommit(commitHash);
     }
 
-    /** Helper method meant to make a copy of blob maps.
+    /** Helper method meant for loading a commit from the object store.
      *
-     * @param c for this commit.
-     * @return a copy of this commit's blob pointer.
+     * @param hash for commit hash.
+     * @return the commit with that hash.
+     */
+    static Commit readCommit(String hash) {
+        return CACHE.get(hash, COMMITS);
+    }
+
+    /** Helper method meant for saving a commit to the object store.
+     *
+     * @param c for commit to save.
+     */
+    static void writeCommit(Commit c) {
+        COMMITS.put(c.getCommitHash(), c.encode());
+        CACHE.put(c);
+        messageIndex().add(c);
+    }
+
+    /** Helper method meant for opening the commit message index.  The
+     *  index is read from disk on first query, so a fresh instance always
+     *  sees commits made by other processes.
+     *
+     * @return the message index.
+     */
+    static MessageIndex messageIndex() {
+        return new MessageIndex(MESSAGE_INDEX, MESSAGE_JOURNAL);
+    }
+
+    /** Helper method meant for loading the sparse-checkout patterns.
+     *
+     * @return the patterns, which include every path if none are set.
+     */
+    static SparseCheckout sparse() {
+        return SparseCheckout.read(SPARSE_FILE);
+    }
+
+    /** Helper method meant for loading the staging area.
+     *
+     * @return the stage as last saved.
+     */
+    static Stage readStage() {
+        Stage stage = Utils.readObject(
+                Utils.join(STAGING_AREA, "stage.txt"), Stage.class);
+        stage.watch(Monitor.active(), CWD);
+        return stage;
+    }
+
+    /** Helper method meant for saving the staging area. */
+    static void writeStage() {
+        Journal tx = journal();
+        writeStage(tx);
+        tx.commit();
+    }
+
+    /** Helper method meant for saving the staging area as part of
+     *  transaction TX.
+     *
+     * @param tx for the transaction.
+     */
+    static void writeStage(Journal tx) {
+        tx.write(Utils.join(STAGING_AREA, "stage.txt"),
+                Utils.serialize(staging));
+    }
+
+    /** Helper method meant for pointing ref NAME, a branch or HEAD, at
+     *  VALUE as part of transaction TX.
+     *
+     * @param tx for the transaction.
+     * @param name for branch name, or HEAD.
+     * @param value for commit hash, or branch name for HEAD.
+     */
+    static void writeRef(Journal tx, String name, String value) {
+        File ref = Utils.join(BRANCH_DIR, name + ".txt");
+        ref.getParentFile().mkdirs();
+        tx.write(ref, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Helper method listing the branches in directory BRANCHES,
+     *  including the remote-tracking branches REMOTE/BRANCH fetched into
+     *  its subdirectories.
+     *
+     * @param branches for a branch directory.
+     * @return the sorted branch names, without HEAD.
+     */
+    static List<String> branchNames(File branches) {
+        ArrayList<String> names = new ArrayList<>();
+        File[] files = branches.listFiles();
+        if (files == null) {
+            return names;
+        }
+        for (File file: files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                for (String sub: Utils.plainFilenamesIn(file)) {
+                    if (sub.endsWith(".txt")) {
+                        names.add(name + "/"
+                                + sub.substring(0, sub.length() - 4));
+                    }
+                }
+            } else if (name.endsWith(".txt") && !name.equals("HEAD.txt")) {
+                names.add(name.substring(0, name.length() - 4));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Helper method meant for starting a transaction updating refs and
+     *  the staging area, made durable after any new objects.
+     *
+     * @return a new transaction.
+     */
+    static Journal journal() {
+        return new Journal(JOURNAL_FILE, COMMITS, TREES, BLOBS);
+    }
+
+    /** Finish or discard any ref and stage updates interrupted by a
+     *  crash.  Run before every command, holding the repository lock. */
+    static void recover() {
+        RepoLock.Cache cache = RepoLock.cache();
+        try {
+            recover(GITLET_REPO);
+        } finally {
+            cache.close();
+        }
+    }
+
+    /** Helper method finishing or discarding the ref and stage updates
+     *  of the repository in directory DIR, whose lock the caller holds.
+     *
+     * @param dir for a .gitlet directory.
      */
-    public HashMap<String, String> duplicateBlobs(Commit c) {
-        HashMap<String, String> myBlobs = c.getBlob();
-        return (HashMap<String, String>) myBlobs.clone();
+    static void recover(File dir) {
+        ArrayList<File> dirs = new ArrayList<>();
+        File branches = Remote.in(dir, BRANCH_DIR);
+        dirs.add(branches);
+        File[] remotes = branches.listFiles(File::isDirectory);
+        if (remotes != null) {
+            dirs.addAll(Arrays.asList(remotes));
+        }
+        dirs.add(Remote.in(dir, STAGING_AREA));
+        Journal.recover(Remote.in(dir, JOURNAL_FILE),
+                dirs.toArray(new File[0]));
+    }
+
+    /** Helper method meant for expanding a possibly abbreviated commit
+     *  id, printing an error if no commit or several commits match.
+     *
+     * @param id for full or abbreviated commit id.
+     * @return the full commit hash, or null if ID is unknown or ambiguous.
+     */
+    public String resolveCommit(String id) {
+        List<String> matches = id.isEmpty()
+            ? new ArrayList<>() : COMMITS.idsWithPrefix(id.toLowerCase(), 2);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (matches.size() > 1) {
+            System.out.println("Ambiguous commit id; use more characters.");
+            return null;
+        }
+        return matches.get(0);
+    }
+
+    /** Helper method meant for loading the commit graph, building it
+     *  from the commit store if it is missing.
+     *
+     * @return my commit graph.
+     */
+    static CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(GRAPH_FILE);
+            if (_graph.size() == 0 && COMMITS.dir().exists()) {
+                _graph.rebuild(COMMITS);
+            }
+        }
+        return _graph;
+    }
+
+    /** Helper method meant for finding a commit's id in the commit graph,
+     *  rebuilding the graph if the commit is missing from it.
+     *
+     * @param hash for commit hash.
+     * @return the commit's graph id.
+     */
+    static int graphId(String hash) {
+        int id = graph().id(hash);
+        if (id == CommitGraph.NONE) {
+            _graph.load();
+            id = _graph.id(hash);
+        }
+        if (id == CommitGraph.NONE) {
+            _graph.rebuild(COMMITS);
+            id = _graph.id(hash);
+        }
+        return id;
+    }
+
+    /** Helper method replacing the files of commit CURR in the working
+     *  directory with those of commit TARGET.  Only paths whose blobs
+     *  differ between the two trees and that are included by the
+     *  sparse-checkout patterns are examined, deleted or written, and the
+     *  files are written in parallel by Checkout.
+     *
+     * @param curr for the commit currently checked out.
+     * @param target for the commit to check out.
+     * @return false if an untracked file is in the way, and nothing
+     *         was changed.
+     */
+    public boolean checkoutCommit(Commit curr, Commit target) {
+        List<DiffEntry> entries =
+            DiffEngine.diffTrees(curr.tree(), target.tree(), false);
+        TreeMap<String, String> changes = DiffEngine.changes(entries);
+        SparseCheckout sparse = sparse();
+        changes.keySet().removeIf(name -> !sparse.includes(name));
+        for (DiffEntry e: entries) {
+            String name = e.path();
+            if (e.oldHash() == null && changes.get(name) != null
+                    && Utils.join(CWD, name).exists()) {
+                System.out.println("There is an untracked file in the "
+                        + "way; delete it, or add and commit it first.");
+                return false;
+            }
+        }
+        Checkout.apply(changes, CWD, BLOBS);
+        return true;
+    }
+
+    /** Helper method deleting working file NAME, if present.
+     *
+     * @param name for file name.
+     */
+    public void deleteWorkingFile(String name) {
+        Checkout.delete(CWD, name);
     }
 
     /** Stage object for addition and removal. */
     private static Stage staging;
 
+    /** Commit graph, or null until first needed. */
+    private static CommitGraph _graph;
+
 }
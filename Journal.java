@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** A write-ahead journal making a group of small file updates, such as
+ *  a branch pointer and the staging area, atomic and durable.  The new
+ *  contents of every file are first written to the journal and forced to
+ *  disk; each file is then replaced by writing its lock file and renaming
+ *  it into place, and the journal is removed.  If the process dies part
+ *  way, recover replays a complete journal or discards a torn one.
+ *
+ *  A transaction forces data to disk in three batches however many files
+ *  it updates: the objects written since the last transaction, then the
+ *  journal and, once it is renamed into place, its directory, then the
+ *  replaced files, each directory being forced once.
+ *  @author Nhu Vu
+ */
+class Journal {
+
+    /** Magic number at the start of a journal. */
+    static final int MAGIC = 0x474a524e;
+
+    /** Suffix of the lock file held while a file is being replaced. */
+    static final String LOCK_SUFFIX = ".lock";
+
+    /** A transaction logged in FILE, which first makes durable any objects
+     *  written to STORES.
+     *
+     * @param file for the journal file.
+     * @param stores for stores whose new objects the updates refer to.
+     */
+    Journal(File file, ObjectStore... stores) {
+        _file = file;
+        _stores = stores;
+        _updates = new LinkedHashMap<>();
+    }
+
+    /** Replace the contents of TARGET with CONTENTS when this transaction
+     *  commits.
+     *
+     * @param target for file to replace.
+     * @param contents for its new contents.
+     */
+    void write(File target, byte[] contents) {
+        _updates.put(target, contents);
+    }
+
+    /** Perform the updates of this transaction.  Throws a GitletException
+     *  if one of the files is locked by another process. */
+    void commit() {
+        if (_updates.isEmpty()) {
+            return;
+        }
+        LinkedHashSet<File> objects = new LinkedHashSet<>();
+        for (ObjectStore store : _stores) {
+            objects.addAll(store.takeUnsynced());
+        }
+        force(objects);
+        for (File target : _updates.keySet()) {
+            File lock = lockFile(target);
+            try {
+                if (!lock.createNewFile()) {
+                    unlock(target);
+                    throw Utils.error("Unable to lock %s: another gitlet "
+                            + "process is running.", target.getName());
+                }
+            } catch (IOException excp) {
+                unlock(target);
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        File temp = new File(_file.getPath() + ".tmp");
+        Utils.writeContents(temp, encode(_updates));
+        Utils.force(temp);
+        Utils.rename(temp, _file);
+        Utils.force(_file.getAbsoluteFile().getParentFile());
+        apply(_updates);
+        _file.delete();
+        _updates.clear();
+    }
+
+    /** Finish or discard a transaction left behind by a dead process:
+     *  replay the journal FILE if it is complete, delete it if torn, and
+     *  remove leftover lock files in DIRS.  The caller must hold the
+     *  repository lock, so no live process can be using them.
+     *
+     * @param file for the journal file.
+     * @param dirs for directories of journaled files.
+     */
+    static void recover(File file, File... dirs) {
+        new File(file.getPath() + ".tmp").delete();
+        if (file.exists()) {
+            LinkedHashMap<File, byte[]> updates = decode(file);
+            if (updates != null) {
+                for (File target : updates.keySet()) {
+                    lockFile(target).delete();
+                }
+                apply(updates);
+            }
+            file.delete();
+        }
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File lock : files) {
+                if (lock.getName().endsWith(LOCK_SUFFIX)) {
+                    lock.delete();
+                }
+            }
+        }
+    }
+
+    /** Replace each file of UPDATES through its lock file, then force the
+     *  replaced files to disk.  The lock files must already exist. */
+    private static void apply(Map<File, byte[]> updates) {
+        for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+            File lock = lockFile(e.getKey());
+            Utils.writeContents(lock, e.getValue());
+            Utils.rename(lock, e.getKey());
+        }
+        force(updates.keySet());
+    }
+
+    /** Delete the lock files of the updates before TARGET, which this
+     *  transaction created. */
+    private void unlock(File target) {
+        for (File locked : _updates.keySet()) {
+            if (locked.equals(target)) {
+                return;
+            }
+            lockFile(locked).delete();
+        }
+    }
+
+    /** Return the lock file of TARGET. */
+    private static File lockFile(File target) {
+        return new File(target.getPath() + LOCK_SUFFIX);
+    }
+
+    /** Force FILES and the directories containing them to disk.  Each
+     *  directory is forced once, however many of FILES it holds. */
+    private static void force(Iterable<File> files) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        for (File file : files) {
+            Utils.force(file);
+            dirs.add(file.getAbsoluteFile().getParentFile());
+        }
+        for (File dir : dirs) {
+            Utils.force(dir);
+        }
+    }
+
+    /** Return the journal recording UPDATES: the magic number, the number
+     *  of updates, each path and its contents, and a CRC of all that. */
+    static byte[] encode(Map<File, byte[]> updates) {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(updates.size());
+            for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+                byte[] path = e.getKey().getPath()
+                    .getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(stream.toByteArray());
+            out.writeLong(crc.getValue());
+            out.close();
+            return stream.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding journal.");
+        }
+    }
+
+    /** Return the updates recorded in journal FILE, or null if it is torn
+     *  or corrupt. */
+    private static LinkedHashMap<File, byte[]> decode(File file) {
+        byte[] contents = Utils.readContents(file);
+        if (contents.length < 8 + 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(contents)
+                .getLong(contents.length - 8)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            LinkedHashMap<File, byte[]> result = new LinkedHashMap<>();
+            int count = in.readInt();
+            for (int k = 0; k < count; k += 1) {
+                byte[] path = new byte[in.readInt()];
+                in.readFully(path);
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                result.put(new File(new String(path,
+                        StandardCharsets.UTF_8)), data);
+            }
+            return result;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The journal file. */
+    private final File _file;
+
+    /** Stores whose newly written objects are made durable first. */
+    private final ObjectStore[] _stores;
+
+    /** New contents of each file updated by this transaction. */
+    private final LinkedHashMap<File, byte[]> _updates;
+}
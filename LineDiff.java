@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-level differences between two sequences of lines, computed with
+ *  Myers' O(ND) algorithm after trimming the common prefix and suffix.
+ *  Lines are compared as small integers, assigned by the caller so that
+ *  equal lines get equal numbers.
+ *  @author Nhu Vu
+ */
+class LineDiff {
+
+    /** Return the hunks turning A into B, in order.  Each hunk is an array
+     *  {aStart, aEnd, bStart, bEnd}: lines [aStart, aEnd) of A are
+     *  replaced by lines [bStart, bEnd) of B.
+     *
+     * @param a for the old lines.
+     * @param b for the new lines.
+     * @return the changed regions.
+     */
+    static List<int[]> diff(int[] a, int[] b) {
+        int lo = 0;
+        while (lo < a.length && lo < b.length && a[lo] == b[lo]) {
+            lo += 1;
+        }
+        int aHi = a.length, bHi = b.length;
+        while (aHi > lo && bHi > lo && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        ArrayList<int[]> result = new ArrayList<>();
+        if (lo == aHi && lo == bHi) {
+            return result;
+        } else if (lo == aHi || lo == bHi) {
+            result.add(new int[] {lo, aHi, lo, bHi});
+            return result;
+        }
+        boolean[][] matched = snakes(a, lo, aHi, b, lo, bHi);
+        boolean[] aMatched = matched[0], bMatched = matched[1];
+        int i = lo, j = lo;
+        while (i < aHi || j < bHi) {
+            if (i < aHi && j < bHi && aMatched[i - lo] && bMatched[j - lo]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < aHi && !aMatched[i - lo]) {
+                i += 1;
+            }
+            while (j < bHi && !bMatched[j - lo]) {
+                j += 1;
+            }
+            result.add(new int[] {i0, i, j0, j});
+        }
+        return result;
+    }
+
+    /** Return, for lines [aLo, aHi) of A and [bLo, bHi) of B, which lines
+     *  belong to a longest common subsequence, found by Myers' greedy
+     *  search for the shortest edit script. */
+    private static boolean[][] snakes(int[] a, int aLo, int aHi,
+                                      int[] b, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int max = n + m;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        ArrayList<int[]> trace = new ArrayList<>();
+        int found = -1;
+        for (int d = 0; d <= max && found < 0; d += 1) {
+            int[] snapshot = new int[2 * d + 1];
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    found = d;
+                }
+            }
+            for (int k = -d; k <= d; k += 1) {
+                snapshot[k + d] = v[offset + k];
+            }
+            trace.add(snapshot);
+        }
+
+        boolean[] aMatched = new boolean[n];
+        boolean[] bMatched = new boolean[m];
+        int x = n, y = m;
+        for (int d = found; d > 0; d -= 1) {
+            int[] prev = trace.get(d - 1);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && get(prev, d - 1, k - 1)
+                    < get(prev, d - 1, k + 1))) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = get(prev, d - 1, prevK);
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                aMatched[x] = true;
+                bMatched[y] = true;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            aMatched[x] = true;
+            bMatched[y] = true;
+        }
+        return new boolean[][] {aMatched, bMatched};
+    }
+
+    /** Return entry K of SNAPSHOT, the furthest-reaching x values after
+     *  D steps, or -1 if K is out of its range. */
+    private static int get(int[] snapshot, int d, int k) {
+        if (k < -d || k > d) {
+            return -1;
+        }
+        return snapshot[k + d];
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/** Options limiting the output of log and global-log: at most a given
+ *  number of commits, only commits in a range of dates, and optionally
+ *  one line per commit.
+ *  @author Nhu Vu
+ */
+class LogOptions {
+
+    /** Options printing every commit in full. */
+    LogOptions() {
+        _limit = Integer.MAX_VALUE;
+        _since = Long.MIN_VALUE;
+        _until = Long.MAX_VALUE;
+    }
+
+    /** Return the options given by ARGS, the operands following the
+     *  command name, or null if they are malformed.  Accepted options are
+     *  "-n COUNT", "--since DATE", "--until DATE" and "--oneline", where
+     *  DATE is yyyy-MM-dd in the local time zone and both bounds are
+     *  inclusive.
+     *
+     * @param args for option operands.
+     * @return the parsed options.
+     */
+    static LogOptions parse(String... args) {
+        LogOptions result = new LogOptions();
+        try {
+            for (int k = 0; k < args.length; k += 1) {
+                switch (args[k]) {
+                case "--oneline":
+                    result._oneline = true;
+                    break;
+                case "-n":
+                    k += 1;
+                    result._limit = Integer.parseInt(args[k]);
+                    if (result._limit < 0) {
+                        return null;
+                    }
+                    break;
+                case "--since":
+                    k += 1;
+                    result._since = startOfDay(LocalDate.parse(args[k]));
+                    break;
+                case "--until":
+                    k += 1;
+                    result._until =
+                        startOfDay(LocalDate.parse(args[k]).plusDays(1)) - 1;
+                    break;
+                default:
+                    return null;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException
+                 | DateTimeParseException excp) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Return the time in milliseconds at which DAY begins locally. */
+    private static long startOfDay(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault())
+            .toInstant().toEpochMilli();
+    }
+
+    /** Return the largest number of commits to print. */
+    int limit() {
+        return _limit;
+    }
+
+    /** Return true iff a commit made at TIME is too new to print. */
+    boolean tooNew(long time) {
+        return time > _until;
+    }
+
+    /** Return true iff a commit made at TIME is too old to print. */
+    boolean tooOld(long time) {
+        return time < _since;
+    }
+
+    /** Return true iff commits are printed one per line. */
+    boolean oneline() {
+        return _oneline;
+    }
+
+    /** Maximum number of commits to print. */
+    private int _limit;
+
+    /** Earliest commit time to print, in milliseconds. */
+    private long _since;
+
+    /** Latest commit time to print, in milliseconds. */
+    private long _until;
+
+    /** True iff commits are printed one per line. */
+    private boolean _oneline;
+}
@@ -1,18 +1,127 @@
 package gitlet;
 
+import java.io.File;
+import java.util.Arrays;
+
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Nhu Vu
  */
 public class Main {
 
+    /** Prefix of the option naming a metrics file. */
+    static final String METRICS_OPTION = "--metrics=";
+
+    /** Prefix of the gc option giving the grace period in seconds. */
+    static final String GRACE_OPTION = "--grace=";
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
-        Gitlet r = new Gitlet();
+        if (args.length > 0 && args[0].equals("daemon")) {
+            daemonHelper(args);
+            return;
+        }
+        int status = Daemon.forward(args);
+        if (status == Daemon.NOT_RUNNING) {
+            run(new Gitlet(), args);
+        } else if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Run the command given by ARGS on repository R in this process.
+     *  ARGS may start with "--trace", which prints the time spent in
+     *  each kind of primitive operation to the standard error, and
+     *  "--metrics=FILE", which appends those figures to FILE as JSON.
+     *
+     * @param r for this gitlet repo.
+     * @param args for inputs.
+     */
+    public static void run(Gitlet r, String... args) {
+        boolean trace = false;
+        File metrics = null;
+        int first;
+        for (first = 0; first < args.length; first += 1) {
+            if (args[first].equals("--trace")) {
+                trace = true;
+            } else if (args[first].startsWith(METRICS_OPTION)) {
+                metrics = new File(
+                        args[first].substring(METRICS_OPTION.length()));
+            } else {
+                break;
+            }
+        }
+        String[] command = Arrays.copyOfRange(args, first, args.length);
+        if (!trace && metrics == null) {
+            runCommand(r, command);
+            return;
+        }
+        Trace.begin();
+        try {
+            runCommand(r, command);
+        } finally {
+            long total = Trace.finish();
+            String name = command.length == 0 ? "" : command[0];
+            if (trace) {
+                Trace.print(System.err, name, total);
+            }
+            if (metrics != null) {
+                Trace.append(metrics, name, total);
+            }
+        }
+    }
+
+    /** Run the command given by ARGS, without options, on repository R,
+     *  holding the repository lock.
+     *
+     * @param r for this gitlet repo.
+     * @param args for inputs.
+     */
+    static void runCommand(Gitlet r, String... args) {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
+        if (!Gitlet.GITLET_REPO.exists() || args[0].equals("init")) {
+            dispatch(r, args);
+            return;
+        }
+        RepoLock lock = RepoLock.acquire(Gitlet.LOCK_FILE,
+                readOnly(args[0]));
+        try {
+            Gitlet.recover();
+            dispatch(r, args);
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Return whether command COMMAND only reads the repository, and so
+     *  may run alongside other such commands.
+     *
+     * @param command for command name.
+     * @return whether it takes the repository lock shared.
+     */
+    static boolean readOnly(String command) {
+        switch (command) {
+        case "log":
+        case "global-log":
+        case "status":
+        case "find":
+        case "diff":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** Run the command given by ARGS on repository R, holding whatever
+     *  lock it needs.
+     *
+     * @param r for this gitlet repo.
+     * @param args for inputs.
+     */
+    static void dispatch(Gitlet r, String... args) {
         switch (args[0]) {
         case "init":
             initHelper(r, args);
@@ -24,9 +133,7 @@ public class Main {
             commitHelper(r, args);
             break;
         case "log":
-            if (validInput(1, args)) {
-                r.log();
-            }
+            logHelper(r, args);
             break;
         case "checkout":
             checkoutHelper(r, args);
@@ -46,9 +153,7 @@ public class Main {
             findHelper(r, args);
             break;
         case "global-log":
-            if (validInput(1, args)) {
-                r.globalLog();
-            }
+            logHelper(r, args);
             break;
         case "rm-branch":
             rmbHelper(r, args);
@@ -59,6 +164,49 @@ public class Main {
         case "merge":
             mergeHelper(r, args);
             break;
+        case "diff":
+            if (args.length <= 3 && validInput(args.length, args)) {
+                r.diff(Arrays.copyOfRange(args, 1, args.length));
+            } else {
+                validInput(1, args);
+            }
+            break;
+        case "pack":
+            if (validInput(1, args)) {
+                r.pack();
+            }
+            break;
+        case "gc":
+            gcHelper(r, args);
+            break;
+        case "sparse-checkout":
+            sparseHelper(r, args);
+            break;
+        case "add-remote":
+            if (validInput(3, args)) {
+                r.addRemote(args[1], args[2]);
+            }
+            break;
+        case "rm-remote":
+            if (validInput(2, args)) {
+                r.removeRemote(args[1]);
+            }
+            break;
+        case "push":
+            if (validInput(3, args)) {
+                r.push(args[1], args[2]);
+            }
+            break;
+        case "fetch":
+            if (validInput(3, args)) {
+                r.fetch(args[1], args[2]);
+            }
+            break;
+        case "pull":
+            if (validInput(3, args)) {
+                r.pull(args[1], args[2]);
+            }
+            break;
         default:
             System.out.println("No command "
                     + "with that name exists.");
@@ -78,6 +226,29 @@ public class Main {
         }
     }
 
+    /** Helper method.  "daemon" serves commands until stopped,
+     *  "daemon --watch" also watches the working directory for changes,
+     *  and "daemon --stop" stops a running daemon.  If a daemon is
+     *  already running, the command is sent to it, and its exit status
+     *  becomes this process's.
+     *
+     * @param args for inputs.
+     */
+    public static void daemonHelper(String... args) {
+        int status = Daemon.forward(args);
+        if (status > 0) {
+            System.exit(status);
+        } else if (status == 0) {
+            return;
+        } else if (args.length == 2 && args[1].equals("--stop")) {
+            System.out.println("No daemon is running.");
+        } else if (args.length == 2 && args[1].equals("--watch")) {
+            Daemon.serve(new Gitlet(), true);
+        } else if (validInput(1, args)) {
+            Daemon.serve(new Gitlet(), false);
+        }
+    }
+
     /** Helper method.
      *
      * @param repo for this gitlet repo.
@@ -157,22 +328,102 @@ public class Main {
      * @param args for my inputs.
      */
     public static void addHelper(Gitlet r, String... args) {
-        if (validInput(2, args)) {
-            r.add(args[1]);
+        if (args.length > 2 && validInput(args.length, args)) {
+            r.addAll(Arrays.copyOfRange(args, 1, args.length));
+        } else if (validInput(2, args)) {
+            if (Utils.join(Gitlet.CWD, args[1]).isDirectory()) {
+                r.addAll(args[1]);
+            } else {
+                r.add(args[1]);
+            }
         }
     }
 
-    /** Helper method.
+    /** Helper method for log and global-log, which accept "-n COUNT",
+     *  "--since DATE", "--until DATE" and "--oneline".
+     *
+     * @param r for this gitlet directory.
+     * @param args for my inputs.
+     */
+    public static void logHelper(Gitlet r, String... args) {
+        if (!validInput(args.length, args)) {
+            return;
+        }
+        LogOptions options =
+            LogOptions.parse(Arrays.copyOfRange(args, 1, args.length));
+        if (options == null) {
+            System.out.println("Incorrect operands.");
+        } else if (args[0].equals("log")) {
+            r.log(options);
+        } else {
+            r.globalLog(options);
+        }
+    }
+
+    /** Helper method for find, which accepts a message, "--word WORDS"
+     *  or "--substring TEXT".
      *
      * @param r for this gitlet directory.
      * @param args for my inputs.
      */
     public static void findHelper(Gitlet r, String... args) {
-        if (validInput(2, args)) {
+        if (args.length == 3 && validInput(3, args)) {
+            r.find(args[1], args[2]);
+        } else if (validInput(2, args)) {
             r.find(args[1]);
         }
     }
 
+    /** Helper method for sparse-checkout, which accepts "list",
+     *  "set PATTERNS" and "disable".
+     *
+     * @param r for this gitlet directory.
+     * @param args for my inputs.
+     */
+    public static void sparseHelper(Gitlet r, String... args) {
+        if (!validInput(args.length, args)) {
+            return;
+        } else if (args.length >= 3 && args[1].equals("set")
+                || args.length == 2 && (args[1].equals("list")
+                        || args[1].equals("disable"))) {
+            r.sparseCheckout(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Helper method for gc, which accepts "--repack" and
+     *  "--grace=SECONDS", the age below which unreachable objects are
+     *  kept.
+     *
+     * @param r for this gitlet directory.
+     * @param args for my inputs.
+     */
+    public static void gcHelper(Gitlet r, String... args) {
+        if (!validInput(args.length, args)) {
+            return;
+        }
+        boolean repack = false;
+        long grace = GarbageCollector.GRACE_MILLIS;
+        for (int k = 1; k < args.length; k += 1) {
+            if (args[k].equals("--repack")) {
+                repack = true;
+            } else if (args[k].startsWith(GRACE_OPTION)) {
+                try {
+                    grace = 1000 * Long.parseLong(
+                            args[k].substring(GRACE_OPTION.length()));
+                } catch (NumberFormatException excp) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        r.gc(grace, repack);
+    }
+
     /** Helper method.
      *
      * @param r for this gitlet directory.
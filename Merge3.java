@@ -0,0 +1,246 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line-level three-way merge of two versions of a file against their
+ *  common base.  Each side is diffed against the base with LineDiff;
+ *  regions changed on only one side are taken from that side, and only
+ *  regions changed differently on both sides are marked as conflicts.
+ *  Lines are split at newline bytes and compared and written as raw
+ *  bytes, never decoded, so files in any encoding, or none, are merged
+ *  without being altered.
+ *  @author Nhu Vu
+ */
+class Merge3 {
+
+    /** Marker opening the current side of a conflict. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Marker separating the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker closing a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** Merge the blobs BASE, OURS and THEIRS of STORE, any of which may be
+     *  null for an absent file, and write the result to FILE.  Returns
+     *  true iff some region conflicted.
+     *
+     * @param store for store holding the blobs.
+     * @param base for blob at the split point.
+     * @param ours for blob on the current branch.
+     * @param theirs for blob on the given branch.
+     * @param file for destination file.
+     * @return whether the merge conflicted.
+     */
+    static boolean merge(ObjectStore store, String base, String ours,
+                         String theirs, File file) {
+        HashMap<ByteBuffer, Integer> numbers = new HashMap<>();
+        ArrayList<byte[]> lines = new ArrayList<>();
+        int[] o = read(store, base, numbers, lines);
+        int[] a = read(store, ours, numbers, lines);
+        int[] b = read(store, theirs, numbers, lines);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()), Utils.BUFFER_SIZE)) {
+            return merge(o, a, b, lines, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write to FILE the blobs OURS and THEIRS of STORE, either of which
+     *  may be null for an absent file, as the two sides of one conflict.
+     *  The blobs are streamed as bytes, so nothing is decoded.
+     *
+     * @param store for store holding the blobs.
+     * @param ours for blob on the current branch.
+     * @param theirs for blob on the given branch.
+     * @param file for destination file.
+     */
+    static void conflict(ObjectStore store, String ours, String theirs,
+                         File file) {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(file.toPath()), Utils.BUFFER_SIZE)) {
+            out.write(OURS.getBytes(StandardCharsets.UTF_8));
+            copy(store, ours, out);
+            out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+            copy(store, theirs, out);
+            out.write(THEIRS.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the merge of line sequences A and B against base O to OUT,
+     *  where LINES gives the bytes of each line number.  Returns true iff
+     *  some region conflicted. */
+    static boolean merge(int[] o, int[] a, int[] b, List<byte[]> lines,
+                         OutputStream out) throws IOException {
+        List<int[]> ha = LineDiff.diff(o, a), hb = LineDiff.diff(o, b);
+        boolean conflict = false;
+        int i = 0, j = 0;
+        int pos = 0;
+        int shiftA = 0, shiftB = 0;
+        while (i < ha.size() || j < hb.size()) {
+            boolean fromA = j >= hb.size()
+                || (i < ha.size() && ha.get(i)[0] <= hb.get(j)[0]);
+            int start = fromA ? ha.get(i)[0] : hb.get(j)[0];
+            int end = fromA ? ha.get(i)[1] : hb.get(j)[1];
+            int i0 = i, j0 = j;
+            if (fromA) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < ha.size() && overlaps(ha.get(i), start, end)) {
+                    end = Math.max(end, ha.get(i)[1]);
+                    i += 1;
+                    grew = true;
+                }
+                if (j < hb.size() && overlaps(hb.get(j), start, end)) {
+                    end = Math.max(end, hb.get(j)[1]);
+                    j += 1;
+                    grew = true;
+                }
+            }
+            write(o, pos, start, lines, out);
+            int[] sideA = side(ha, i0, i, start, end, shiftA);
+            int[] sideB = side(hb, j0, j, start, end, shiftB);
+            if (i == i0) {
+                write(b, sideB[0], sideB[1], lines, out);
+            } else if (j == j0) {
+                write(a, sideA[0], sideA[1], lines, out);
+            } else if (Arrays.equals(a, sideA[0], sideA[1],
+                                     b, sideB[0], sideB[1])) {
+                write(a, sideA[0], sideA[1], lines, out);
+            } else {
+                out.write(OURS.getBytes(StandardCharsets.UTF_8));
+                write(a, sideA[0], sideA[1], lines, out);
+                out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+                write(b, sideB[0], sideB[1], lines, out);
+                out.write(THEIRS.getBytes(StandardCharsets.UTF_8));
+                conflict = true;
+            }
+            shiftA = sideA[1] - end;
+            shiftB = sideB[1] - end;
+            pos = end;
+        }
+        write(o, pos, o.length, lines, out);
+        return conflict;
+    }
+
+    /** Return true iff HUNK touches base region [START, END).  Hunks that
+     *  merely meet the region are included, so that insertions at the
+     *  same place on both sides are treated as one region. */
+    private static boolean overlaps(int[] hunk, int start, int end) {
+        return hunk[0] <= end && hunk[1] >= start;
+    }
+
+    /** Return {from, to}, the lines of one side replacing base region
+     *  [START, END), given that side's hunks [LO, HI) of HUNKS inside the
+     *  region and SHIFT, its offset from the base just before START. */
+    private static int[] side(List<int[]> hunks, int lo, int hi,
+                              int start, int end, int shift) {
+        if (lo == hi) {
+            return new int[] {start + shift, end + shift};
+        }
+        int[] first = hunks.get(lo), last = hunks.get(hi - 1);
+        return new int[] {first[2] - (first[0] - start),
+                          last[3] + (end - last[1])};
+    }
+
+    /** Write lines [FROM, TO) of SEQ, whose bytes are LINES, to OUT. */
+    private static void write(int[] seq, int from, int to,
+                              List<byte[]> lines, OutputStream out)
+        throws IOException {
+        for (int k = from; k < to; k += 1) {
+            out.write(lines.get(seq[k]));
+        }
+    }
+
+    /** Copy blob ID of STORE, if not null, to OUT. */
+    private static void copy(ObjectStore store, String id, OutputStream out)
+        throws IOException {
+        if (id != null) {
+            try (InputStream in = store.open(id)) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    /** Return the lines of blob ID in STORE as line numbers, numbering new
+     *  lines through NUMBERS and recording their bytes in LINES.  Lines
+     *  keep their terminators.  A null ID has no lines. */
+    private static int[] read(ObjectStore store, String id,
+                              HashMap<ByteBuffer, Integer> numbers,
+                              ArrayList<byte[]> lines) {
+        if (id == null) {
+            return new int[0];
+        }
+        try (InputStream in = new BufferedInputStream(store.open(id),
+                Utils.BUFFER_SIZE)) {
+            return lines(in, numbers, lines);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the lines read from IN as line numbers, numbering new lines
+     *  through NUMBERS and recording their bytes in LINES.  Lines keep
+     *  their terminators.
+     *
+     * @param in for the contents.
+     * @param numbers for the number of each line seen so far.
+     * @param lines for the bytes of each line number.
+     * @return the line numbers.
+     */
+    static int[] lines(InputStream in, HashMap<ByteBuffer, Integer> numbers,
+                       ArrayList<byte[]> lines) throws IOException {
+        int[] result = new int[64];
+        int count = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c >= 0 || line.size() > 0; c = in.read()) {
+            if (c >= 0) {
+                line.write(c);
+            }
+            if (c == '\n' || c < 0) {
+                byte[] bytes = line.toByteArray();
+                line.reset();
+                Integer number = numbers.get(ByteBuffer.wrap(bytes));
+                if (number == null) {
+                    number = lines.size();
+                    numbers.put(ByteBuffer.wrap(bytes), number);
+                    lines.add(bytes);
+                }
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, 2 * count);
+                }
+                result[count] = number;
+                count += 1;
+                if (c < 0) {
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
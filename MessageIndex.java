@@ -0,0 +1,483 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** An inverted index of commit messages, answering find queries without
+ *  decoding any commit.  New commits are appended to a journal; once the
+ *  journal grows long it is folded into a compacted index file.  Both
+ *  files are keyed by commit hash, so replaying a journal that was
+ *  already compacted is harmless.
+ *
+ *  The compacted file is memory-mapped and searched in place: a table of
+ *  commits sorted by hash, each with the offset of its message, and a
+ *  table of tokens sorted by name, each with the offset of its posting
+ *  list, are both bisected, so a query reads only the postings of its
+ *  own tokens and the messages of the commits they list.  Messages with
+ *  no tokens are posted under the empty token.  Only the journal is read
+ *  whole, and it is kept short by compaction.
+ *  @author Nhu Vu
+ */
+class MessageIndex {
+
+    /** Magic number at the start of a compacted index file. */
+    static final int MAGIC = 0x474d4958;
+
+    /** Current compacted index format version. */
+    static final int VERSION = 2;
+
+    /** Size in bytes of the compacted file header. */
+    static final int HEADER = 16;
+
+    /** Size in bytes of one row of the commit table: hash and offset. */
+    static final int DOC_ROW = Pack.ID_BYTES + 8;
+
+    /** Number of journal records after which the index is compacted. */
+    static final int COMPACT_AFTER = 1024;
+
+    /** The index stored in compacted file INDEX and journal JOURNAL.
+     *
+     * @param index for the compacted index file.
+     * @param journal for the journal of recent commits.
+     */
+    MessageIndex(File index, File journal) {
+        _index = index;
+        _journal = journal;
+    }
+
+    /** Return the number of commits indexed. */
+    int size() {
+        load();
+        return _count + _recent.size();
+    }
+
+    /** Record commit C, appending it to the journal.
+     *
+     * @param c for the new commit.
+     */
+    void add(Commit c) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_journal, true)))) {
+            writeRecord(out, c.getCommitHash(), c.commitMsg());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_recent != null) {
+            insert(c.getCommitHash(), c.commitMsg());
+            _journaled += 1;
+        }
+    }
+
+    /** Return the hashes of commits whose message is exactly MESSAGE.
+     *  Only the commits posted under every token of MESSAGE are compared.
+     *
+     * @param message for the message to match.
+     * @return the matching commit hashes.
+     */
+    List<String> exact(String message) {
+        load();
+        ArrayList<String> result = new ArrayList<>();
+        for (String hash : postings(keys(message))) {
+            if (message(hash).equals(message)) {
+                result.add(hash);
+            }
+        }
+        return result;
+    }
+
+    /** Return the hashes of commits whose messages contain every token of
+     *  WORDS, ignoring case and punctuation.  Only the postings of those
+     *  tokens are examined.
+     *
+     * @param words for the tokens to match.
+     * @return the matching commit hashes.
+     */
+    List<String> tokens(String words) {
+        load();
+        List<String> tokens = tokenize(words);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return postings(tokens);
+    }
+
+    /** Return the hashes of commits whose messages contain TEXT.  Every
+     *  message is read, as no token need match.
+     *
+     * @param text for the text to match.
+     * @return the matching commit hashes.
+     */
+    List<String> substring(String text) {
+        load();
+        TreeSet<String> result = new TreeSet<>();
+        for (int doc = 0; doc < _count; doc += 1) {
+            if (messageAt(doc).contains(text)) {
+                result.add(hashAt(doc));
+            }
+        }
+        for (Map.Entry<String, String> e : _recent.entrySet()) {
+            if (e.getValue().contains(text)) {
+                result.add(e.getKey());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Replace the contents of this index with the messages of all
+     *  commits in STORE.
+     *
+     * @param store for store holding every commit.
+     */
+    void rebuild(ObjectStore store) {
+        clear();
+        for (String hash : store.ids()) {
+            insert(hash, Gitlet.readCommit(hash).commitMsg());
+        }
+        compact();
+    }
+
+    /** Write the whole index to the compacted file, replacing it
+     *  atomically, and empty the journal.  Readers compacting at the same
+     *  time take turns. */
+    void compact() {
+        load();
+        TreeMap<String, String> messages = new TreeMap<>(_recent);
+        for (int doc = 0; doc < _count; doc += 1) {
+            messages.put(hashAt(doc), messageAt(doc));
+        }
+        TreeMap<String, List<Integer>> postings = new TreeMap<>();
+        ArrayList<byte[]> encoded = new ArrayList<>();
+        for (String message : messages.values()) {
+            int doc = encoded.size();
+            encoded.add(message.getBytes(StandardCharsets.UTF_8));
+            for (String key : keys(message)) {
+                postings.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(doc);
+            }
+        }
+        RepoLock.Cache cache = RepoLock.cache();
+        try {
+            File temp = new File(_index.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp),
+                            Utils.BUFFER_SIZE))) {
+                write(out, messages.keySet(), encoded, postings);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Utils.rename(temp, _index);
+            _journal.delete();
+            clear();
+            map();
+        } finally {
+            cache.close();
+        }
+    }
+
+    /** Write to OUT a compacted file of the commits HASHES, in order, and
+     *  their encoded MESSAGES, with the posting lists POSTINGS. */
+    private static void write(DataOutputStream out, Collection<String> hashes,
+                              List<byte[]> messages,
+                              TreeMap<String, List<Integer>> postings)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(hashes.size());
+        out.writeInt(postings.size());
+        long offset = HEADER + (long) hashes.size() * DOC_ROW
+            + 8L * postings.size();
+        int doc = 0;
+        for (String hash : hashes) {
+            out.write(Pack.toBytes(hash));
+            out.writeLong(offset);
+            offset += 4 + messages.get(doc).length;
+            doc += 1;
+        }
+        ArrayList<byte[]> tokens = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> e : postings.entrySet()) {
+            byte[] token = e.getKey().getBytes(StandardCharsets.UTF_8);
+            tokens.add(token);
+            out.writeLong(offset);
+            offset += 4 + token.length + 4 + 4L * e.getValue().size();
+        }
+        for (byte[] message : messages) {
+            out.writeInt(message.length);
+            out.write(message);
+        }
+        int k = 0;
+        for (List<Integer> docs : postings.values()) {
+            out.writeInt(tokens.get(k).length);
+            out.write(tokens.get(k));
+            out.writeInt(docs.size());
+            for (int d : docs) {
+                out.writeInt(d);
+            }
+            k += 1;
+        }
+    }
+
+    /** Map the compacted index and replay the journal, compacting if the
+     *  journal has grown long.  Does nothing once loaded. */
+    private void load() {
+        if (_recent != null) {
+            return;
+        }
+        clear();
+        map();
+        if (_journal.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(_journal),
+                            Utils.BUFFER_SIZE))) {
+                while (true) {
+                    byte[] id = new byte[Pack.ID_BYTES];
+                    try {
+                        in.readFully(id);
+                        insert(Pack.toHex(id), readString(in));
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    _journaled += 1;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        if (_journaled >= COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    /** Map the compacted index file, if there is one.  A file in an
+     *  older format is ignored, leaving the index short of commits so
+     *  that it is rebuilt. */
+    private void map() {
+        if (!_index.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(_index, "r");
+             FileChannel channel = raf.getChannel()) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.capacity() < HEADER || _map.getInt(0) != MAGIC) {
+            throw Utils.error("corrupt message index");
+        }
+        if (_map.getInt(4) != VERSION) {
+            _map = null;
+            return;
+        }
+        _count = _map.getInt(8);
+        _tokens = _map.getInt(12);
+    }
+
+    /** Add commit HASH with message MESSAGE to the journaled part of the
+     *  index, unless it is already present. */
+    private void insert(String hash, String message) {
+        if (_recent.containsKey(hash) || find(hash) >= 0) {
+            return;
+        }
+        _recent.put(hash, message);
+        for (String key : keys(message)) {
+            _recentPostings.computeIfAbsent(key, k -> new ArrayList<>())
+                .add(hash);
+        }
+    }
+
+    /** Return the hashes, in order, of the commits posted under every
+     *  token of KEYS, stopping as soon as none remain. */
+    private List<String> postings(Collection<String> keys) {
+        TreeSet<String> result = null;
+        for (String key : keys) {
+            TreeSet<String> hashes = new TreeSet<>();
+            for (int doc : posting(key)) {
+                hashes.add(hashAt(doc));
+            }
+            hashes.addAll(_recentPostings.getOrDefault(key, List.of()));
+            if (result == null) {
+                result = hashes;
+            } else {
+                result.retainAll(hashes);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new ArrayList<>() : new ArrayList<>(result);
+    }
+
+    /** Return the message of indexed commit HASH. */
+    private String message(String hash) {
+        String result = _recent.get(hash);
+        return result != null ? result : messageAt(find(hash));
+    }
+
+    /** Return the document number of HASH in the compacted file, or -1
+     *  if it is not there. */
+    private int find(String hash) {
+        byte[] key = Pack.toBytes(hash);
+        byte[] row = new byte[Pack.ID_BYTES];
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            _map.get(HEADER + mid * DOC_ROW, row);
+            int cmp = Arrays.compareUnsigned(row, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the hash of compacted document DOC. */
+    private String hashAt(int doc) {
+        byte[] row = new byte[Pack.ID_BYTES];
+        _map.get(HEADER + doc * DOC_ROW, row);
+        return Pack.toHex(row);
+    }
+
+    /** Return the message of compacted document DOC. */
+    private String messageAt(int doc) {
+        return stringAt((int) _map.getLong(HEADER + doc * DOC_ROW
+                + Pack.ID_BYTES));
+    }
+
+    /** Return the offset of the posting list of the K-th token of the
+     *  compacted file. */
+    private int tokenAt(int k) {
+        return (int) _map.getLong(HEADER + _count * DOC_ROW + 8 * k);
+    }
+
+    /** Return the compacted documents posted under KEY, found by
+     *  bisecting the token table. */
+    private int[] posting(String key) {
+        int lo = 0, hi = _tokens - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = tokenAt(mid);
+            int cmp = stringAt(offset).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                offset += 4 + _map.getInt(offset);
+                int[] docs = new int[_map.getInt(offset)];
+                for (int d = 0; d < docs.length; d += 1) {
+                    docs[d] = _map.getInt(offset + 4 + 4 * d);
+                }
+                return docs;
+            }
+        }
+        return new int[0];
+    }
+
+    /** Return the string written by writeString at OFFSET of the
+     *  compacted file. */
+    private String stringAt(int offset) {
+        byte[] bytes = new byte[_map.getInt(offset)];
+        _map.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Empty the in-memory index. */
+    private void clear() {
+        _map = null;
+        _count = 0;
+        _tokens = 0;
+        _recent = new LinkedHashMap<>();
+        _recentPostings = new HashMap<>();
+        _journaled = 0;
+    }
+
+    /** Return the distinct tokens under which MESSAGE is posted: its
+     *  tokens, or the empty token if it has none. */
+    private static TreeSet<String> keys(String message) {
+        TreeSet<String> result = new TreeSet<>(tokenize(message));
+        if (result.isEmpty()) {
+            result.add("");
+        }
+        return result;
+    }
+
+    /** Return the tokens of TEXT: its runs of letters and digits, in
+     *  lower case. */
+    static List<String> tokenize(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String token : text.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    /** Write the record of commit HASH with message MESSAGE to OUT. */
+    private static void writeRecord(DataOutputStream out, String hash,
+                                    String message) throws IOException {
+        out.write(Pack.toBytes(hash));
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return a message written by writeRecord, read from IN. */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** The compacted index file. */
+    private final File _index;
+
+    /** The journal of commits added since the last compaction. */
+    private final File _journal;
+
+    /** The mapped compacted index file, or null if there is none. */
+    private MappedByteBuffer _map;
+
+    /** Number of commits in the compacted file. */
+    private int _count;
+
+    /** Number of tokens in the compacted file. */
+    private int _tokens;
+
+    /** Messages of the journaled commits by hash, or null until
+     *  loaded. */
+    private LinkedHashMap<String, String> _recent;
+
+    /** Hashes of the journaled commits posted under each token. */
+    private HashMap<String, List<String>> _recentPostings;
+
+    /** Number of records read from or added to the journal. */
+    private int _journaled;
+}
@@ -0,0 +1,325 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** A monitor of the working directory, run by the daemon, that keeps the
+ *  list of working files and the paths changed since any earlier point,
+ *  so that status, add and the untracked-file checks need not list or
+ *  stat the whole tree.  It watches every directory but .gitlet with a
+ *  java.nio.file.WatchService, whose events are handled by a background
+ *  thread.
+ *
+ *  Points are named by tokens.  Before each command the daemon calls
+ *  sync, which waits until every change made before the call has been
+ *  seen and returns the current token; the stage saves it, and the next
+ *  command asks for the paths changed since.  Events arrive
+ *  asynchronously, so sync creates a cookie file in .gitlet and waits
+ *  for the event reporting it.  A token of another monitor, or one taken
+ *  before the event queue overflowed, is unknown, and callers then fall
+ *  back to examining every file.
+ *  @author Nhu Vu
+ */
+class Monitor {
+
+    /** Longest wait in sync, in milliseconds, before giving up. */
+    static final long SYNC_MILLIS = 1000;
+
+    /** Prefix of the names of cookie files. */
+    static final String COOKIE = "monitor-cookie-";
+
+    /** Kinds of events watched. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final WatchEvent.Kind<Path>[] KINDS =
+        new WatchEvent.Kind[] {
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY
+        };
+
+    /** A monitor of working directory ROOT, creating cookies in
+     *  directory GITLET.
+     *
+     * @param root for working directory.
+     * @param gitlet for .gitlet directory.
+     */
+    private Monitor(File root, File gitlet) throws IOException {
+        _root = root;
+        _gitlet = gitlet;
+        _id = Long.toHexString(System.nanoTime());
+        _service = FileSystems.getDefault().newWatchService();
+        try {
+            _cookieKey = gitlet.toPath().register(_service,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            scan(root, "", false);
+        } catch (IOException excp) {
+            _service.close();
+            throw excp;
+        }
+        Thread thread = new Thread(this::run, "gitlet-monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Start monitoring working directory ROOT, whose repository is
+     *  GITLET, in this process.
+     *
+     * @param root for working directory.
+     * @param gitlet for .gitlet directory.
+     */
+    static void start(File root, File gitlet) throws IOException {
+        _active = new Monitor(root, gitlet);
+    }
+
+    /** Stop the monitor started in this process, if any. */
+    static void stop() {
+        Monitor monitor = _active;
+        _active = null;
+        if (monitor != null) {
+            try {
+                monitor._service.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Return the monitor running in this process, or null. */
+    static Monitor active() {
+        return _active;
+    }
+
+    /** Wait until every change made before this call has been seen, and
+     *  return the current token, or null if that took too long.
+     *
+     * @return the token, or null.
+     */
+    synchronized String sync() {
+        _cookies += 1;
+        long cookie = _cookies;
+        File file = new File(_gitlet, COOKIE + cookie);
+        _token = null;
+        try {
+            Utils.writeContents(file, "");
+            long deadline = System.currentTimeMillis() + SYNC_MILLIS;
+            while (_seen < cookie) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return null;
+                }
+                wait(left);
+            }
+        } catch (InterruptedException | IllegalArgumentException excp) {
+            return null;
+        } finally {
+            file.delete();
+        }
+        _token = _id + ":" + _clock;
+        return _token;
+    }
+
+    /** Return the token returned by the last sync, or null if it failed,
+     *  in which case nothing reported by this monitor may be trusted. */
+    synchronized String token() {
+        return _token;
+    }
+
+    /** Return the paths changed or deleted since TOKEN, or null if TOKEN
+     *  is null or unknown.
+     *
+     * @param token for an earlier token.
+     * @return the changed paths, or null.
+     */
+    synchronized Set<String> changedSince(String token) {
+        if (token == null || _token == null) {
+            return null;
+        }
+        int colon = token.indexOf(':');
+        if (colon < 0 || !token.substring(0, colon).equals(_id)) {
+            return null;
+        }
+        long since = Long.parseLong(token.substring(colon + 1));
+        if (since < _overflow) {
+            return null;
+        }
+        HashSet<String> result = new HashSet<>();
+        for (Map.Entry<String, Long> e : _changed.entrySet()) {
+            if (e.getValue() > since) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Return the sorted paths of all working files, or null if the last
+     *  sync failed. */
+    synchronized List<String> files() {
+        return _token == null ? null : new ArrayList<>(_files);
+    }
+
+    /** Handle events until the watch service is closed. */
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = _service.take();
+                synchronized (this) {
+                    handle(key);
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /** Handle the pending events of KEY. */
+    private void handle(WatchKey key) {
+        String dir = _dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow();
+                continue;
+            }
+            String child = event.context().toString();
+            if (key == _cookieKey) {
+                if (child.startsWith(COOKIE)) {
+                    _seen = Math.max(_seen, Long.parseLong(
+                            child.substring(COOKIE.length())));
+                }
+                continue;
+            }
+            if (dir == null || child.equals(".gitlet")) {
+                continue;
+            }
+            String name = dir.isEmpty() ? child : dir + "/" + child;
+            File file = Utils.join(_root, name);
+            _clock += 1;
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                for (String gone
+                         : new ArrayList<>(_files.subSet(name + "/",
+                                 name + "0"))) {
+                    _files.remove(gone);
+                    _changed.put(gone, _clock);
+                }
+                _files.remove(name);
+                _changed.put(name, _clock);
+            } else if (Files.isDirectory(file.toPath(),
+                           LinkOption.NOFOLLOW_LINKS)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    try {
+                        scan(file, name, true);
+                    } catch (IOException excp) {
+                        overflow();
+                    }
+                }
+            } else {
+                if (file.isFile()) {
+                    _files.add(name);
+                }
+                _changed.put(name, _clock);
+            }
+        }
+        if (!key.reset()) {
+            _dirs.remove(key);
+        }
+    }
+
+    /** Add the files at or beneath FILE, named NAME, to the list of
+     *  working files, watching every directory.  Mark each file changed
+     *  if MARK. */
+    private void scan(File file, String name, boolean mark)
+        throws IOException {
+        if (file.isFile()) {
+            _files.add(name);
+            if (mark) {
+                _changed.put(name, _clock);
+            }
+        } else if (file.isDirectory() && !file.getName().equals(".gitlet")) {
+            _dirs.put(file.toPath().register(_service, KINDS), name);
+            String[] children = file.list();
+            if (children == null) {
+                return;
+            }
+            for (String child : children) {
+                scan(Utils.join(file, child),
+                        name.isEmpty() ? child : name + "/" + child, mark);
+            }
+        }
+    }
+
+    /** Forget what is known after events were lost, making every earlier
+     *  token unknown, and list the working files again. */
+    private void overflow() {
+        _clock += 1;
+        _overflow = _clock;
+        _changed.clear();
+        _files.clear();
+        for (WatchKey key : _dirs.keySet()) {
+            key.cancel();
+        }
+        _dirs.clear();
+        try {
+            scan(_root, "", false);
+        } catch (IOException excp) {
+            _token = null;
+        }
+    }
+
+    /** The monitor running in this process, or null. */
+    private static volatile Monitor _active;
+
+    /** Working directory. */
+    private final File _root;
+
+    /** Directory in which cookies are created. */
+    private final File _gitlet;
+
+    /** Identifier of this monitor, distinguishing its tokens. */
+    private final String _id;
+
+    /** Watch service. */
+    private final WatchService _service;
+
+    /** Key watching for cookies. */
+    private final WatchKey _cookieKey;
+
+    /** Path of the directory watched by each key, "" for the root. */
+    private final HashMap<WatchKey, String> _dirs = new HashMap<>();
+
+    /** Paths of all working files. */
+    private final TreeSet<String> _files = new TreeSet<>();
+
+    /** Clock at the last change of each changed path. */
+    private final HashMap<String, Long> _changed = new HashMap<>();
+
+    /** Number of working-tree events handled. */
+    private long _clock;
+
+    /** Clock at the last overflow. */
+    private long _overflow;
+
+    /** Number of cookies created. */
+    private long _cookies;
+
+    /** Highest cookie seen. */
+    private long _seen;
+
+    /** Token returned by the last sync, or null. */
+    private String _token;
+}
@@ -0,0 +1,474 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressed store of compressed objects.  Each object lives
+ *  in a fan-out directory named after the first two characters of its
+ *  id, so that no single directory grows with the size of the history.
+ *  @author Nhu Vu
+ */
+class ObjectStore {
+
+    /** Number of leading id characters used as the fan-out directory. */
+    static final int FANOUT = 2;
+
+    /** Name of the subdirectory holding packs. */
+    static final String PACK_DIR = "pack";
+
+    /** A store rooted at directory DIR.
+     *
+     * @param dir for root directory of this store.
+     */
+    ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Return the root directory of this store. */
+    File dir() {
+        return _dir;
+    }
+
+    /** Create the root directory of this store if needed. */
+    void create() {
+        _dir.mkdirs();
+    }
+
+    /** Return the file holding the object with id ID.
+     *
+     * @param id for object id.
+     * @return the loose object file.
+     */
+    File path(String id) {
+        return Utils.join(_dir, id.substring(0, FANOUT),
+                id.substring(FANOUT));
+    }
+
+    /** Return true iff the object with id ID is present.
+     *
+     * @param id for object id.
+     * @return whether this store holds ID.
+     */
+    boolean contains(String id) {
+        if (id == null || id.length() <= FANOUT) {
+            return false;
+        } else if (path(id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the object with id ID is present as a loose
+     *  object, outside of any pack.
+     *
+     * @param id for object id.
+     * @return whether ID is loose in this store.
+     */
+    boolean containsLoose(String id) {
+        return id != null && id.length() > FANOUT && path(id).isFile();
+    }
+
+    /** Store CONTENTS under id ID, unless already present.  The object
+     *  is written to a temporary file and renamed into place, so
+     *  concurrent writers and readers never see a partial object.
+     *
+     * @param id for object id.
+     * @param contents for raw contents of the object.
+     */
+    void put(String id, byte[] contents) {
+        if (containsLoose(id) || contains(id)) {
+            return;
+        }
+        File file = path(id);
+        file.getParentFile().mkdirs();
+        File temp = tempFile(file.getParentFile(), file.getName() + ".");
+        Utils.writeContents(temp, Utils.compress(contents));
+        Utils.rename(temp, file);
+        _unsynced.add(file);
+    }
+
+    /** Return a new, empty temporary file in directory DIR whose name
+     *  starts with PREFIX and ends in ".tmp", so that it is skipped as an
+     *  object and eventually swept by gc.
+     *
+     * @param dir for directory holding the file.
+     * @param prefix for start of its name.
+     * @return the temporary file.
+     */
+    static File tempFile(File dir, String prefix) {
+        try {
+            return Files.createTempFile(dir.toPath(), prefix, ".tmp")
+                .toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store the contents of FILE, streaming them through the SHA-1
+     *  digest and the compressor in fixed-size chunks, and return their
+     *  id.  Memory use does not depend on the size of FILE.
+     *
+     * @param file for file to store.
+     * @return the id of the stored object.
+     */
+    String putFile(File file) {
+        long start = Trace.start();
+        _dir.mkdirs();
+        File temp = tempFile(_dir, "incoming-");
+        String id;
+        try (InputStream in = Files.newInputStream(file.toPath());
+             OutputStream out = new DeflaterOutputStream(
+                     Files.newOutputStream(temp.toPath()),
+                     new Deflater(Deflater.BEST_SPEED), Utils.BUFFER_SIZE)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[Utils.BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+            id = Utils.hex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (contains(id)) {
+            temp.delete();
+        } else {
+            path(id).getParentFile().mkdirs();
+            Utils.rename(temp, path(id));
+            _unsynced.add(path(id));
+        }
+        Trace.end(Trace.Op.STORE_FILE, start, file.length());
+        return id;
+    }
+
+    /** Write the contents of object ID to FILE, creating its directory
+     *  if needed.  Loose objects are inflated straight into the file's
+     *  channel, so memory use does not depend on the size of the object.
+     *
+     * @param id for object id.
+     * @param file for destination file.
+     */
+    void copyTo(String id, File file) {
+        long start = Trace.start();
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        if (!containsLoose(id)) {
+            Utils.writeContents(file, get(id));
+            Trace.end(Trace.Op.COPY_OUT, start, file.length());
+            return;
+        }
+        try (InputStream in = new InflaterInputStream(
+                     Files.newInputStream(path(id).toPath()),
+                     new Inflater(), Utils.BUFFER_SIZE);
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel dest = FileChannel.open(file.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long n;
+            while ((n = dest.transferFrom(source, position,
+                    Utils.BUFFER_SIZE)) > 0) {
+                position += n;
+            }
+            Trace.end(Trace.Op.COPY_OUT, start, position);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream of the contents of object ID.  Loose objects are
+     *  inflated as they are read.
+     *
+     * @param id for object id.
+     * @return a stream of the uncompressed contents.
+     */
+    InputStream open(String id) {
+        if (!containsLoose(id)) {
+            return new ByteArrayInputStream(get(id));
+        }
+        try {
+            return new InflaterInputStream(
+                    Files.newInputStream(path(id).toPath()),
+                    new Inflater(), Utils.BUFFER_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the raw contents of the object with id ID.  Throws
+     *  IllegalArgumentException if there is no such object.
+     *
+     * @param id for object id.
+     * @return the uncompressed contents.
+     */
+    byte[] get(String id) {
+        if (containsLoose(id)) {
+            return Utils.decompress(Utils.readContents(path(id)));
+        }
+        for (int attempt = 0; attempt < 2; attempt += 1) {
+            for (Pack pack : packs()) {
+                byte[] result = pack.read(id, this);
+                if (result != null) {
+                    return result;
+                }
+            }
+            if (containsLoose(id)) {
+                return Utils.decompress(Utils.readContents(path(id)));
+            }
+            synchronized (this) {
+                _packs = null;
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Return the contents of object ID as a String.
+     *
+     * @param id for object id.
+     * @return the uncompressed contents.
+     */
+    String getAsString(String id) {
+        return new String(get(id), StandardCharsets.UTF_8);
+    }
+
+    /** Store serialized OBJ under id ID.
+     *
+     * @param id for object id.
+     * @param obj for object to serialize.
+     */
+    void putObject(String id, Serializable obj) {
+        put(id, Utils.serialize(obj));
+    }
+
+    /** Return the object with id ID, cast to EXPECTEDCLASS.
+     *
+     * @param id for object id.
+     * @param expectedClass for class of the object.
+     * @param <T> for type of the object.
+     * @return the deserialized object.
+     */
+    <T extends Serializable> T getObject(String id, Class<T> expectedClass) {
+        return Utils.deserialize(get(id), expectedClass);
+    }
+
+    /** Return the ids of all objects in this store, in sorted order. */
+    List<String> ids() {
+        TreeSet<String> result = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the ids of all loose objects in this store, in sorted
+     *  order. */
+    List<String> looseIds() {
+        ArrayList<String> result = new ArrayList<>();
+        String[] fanouts = _dir.list();
+        if (fanouts == null) {
+            return result;
+        }
+        for (String fanout : fanouts) {
+            if (fanout.length() != FANOUT) {
+                continue;
+            }
+            List<String> names = Utils.plainFilenamesIn(
+                    Utils.join(_dir, fanout));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (!name.endsWith(".tmp")) {
+                    result.add(fanout + name);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the ids of objects starting with PREFIX, in sorted order,
+     *  stopping after LIMIT matches.  Only the fan-out directory named by
+     *  PREFIX is listed, and packs are searched by bisection.
+     *
+     * @param prefix for abbreviated id.
+     * @param limit for maximum number of matches.
+     * @return the matching ids.
+     */
+    List<String> idsWithPrefix(String prefix, int limit) {
+        TreeSet<String> result = new TreeSet<>();
+        if (prefix.length() < FANOUT) {
+            for (String id : looseIds()) {
+                if (id.startsWith(prefix)) {
+                    result.add(id);
+                }
+            }
+        } else {
+            String fanout = prefix.substring(0, FANOUT);
+            List<String> names =
+                Utils.plainFilenamesIn(Utils.join(_dir, fanout));
+            if (names != null) {
+                for (String name : names) {
+                    if ((fanout + name).startsWith(prefix)
+                            && !name.endsWith(".tmp")) {
+                        result.add(fanout + name);
+                    }
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            result.addAll(pack.idsWithPrefix(prefix, limit));
+        }
+        ArrayList<String> matches = new ArrayList<>(result);
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    /** Return the packs of this store, loading their indices on first
+     *  use.  Safe to call from several checkout workers. */
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File packDir = Utils.join(_dir, PACK_DIR);
+            List<String> names = Utils.plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0, name.length() - 4);
+                        _packs.add(new Pack(Utils.join(packDir, name),
+                                Utils.join(packDir, base + ".pack")));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Roll all loose objects of this store into a new pack and delete
+     *  them once the pack is on disk.  Returns the number of objects
+     *  packed. */
+    int pack() {
+        List<String> loose = looseIds();
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        Pack pack = Pack.write(this, loose, Utils.join(_dir, PACK_DIR));
+        packs().add(pack);
+        for (String id : loose) {
+            File file = path(id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+        return loose.size();
+    }
+
+    /** Replace every pack of this store and its loose objects in KEEP by
+     *  a single pack holding the objects in KEEP, and those of packs
+     *  written at or after CUTOFF.  Loose objects not in KEEP are left
+     *  alone.  Objects are streamed into the new pack by Pack.write, one
+     *  delta window at a time.  Returns the number of packed objects
+     *  dropped.
+     *
+     * @param keep for ids of the objects to keep.
+     * @param cutoff for time before which packed objects may be dropped.
+     * @return the number of objects dropped.
+     */
+    int repack(Set<String> keep, long cutoff) {
+        TreeSet<String> ids = new TreeSet<>();
+        int dropped = 0;
+        List<Pack> old = new ArrayList<>(packs());
+        for (Pack pack : old) {
+            boolean recent = pack.packFile().lastModified() >= cutoff;
+            for (String id : pack.ids()) {
+                if (recent || keep.contains(id)) {
+                    ids.add(id);
+                } else {
+                    dropped += 1;
+                }
+            }
+        }
+        ArrayList<String> loose = new ArrayList<>();
+        for (String id : looseIds()) {
+            if (keep.contains(id)) {
+                ids.add(id);
+                loose.add(id);
+            }
+        }
+        if (loose.isEmpty() && dropped == 0 && old.size() <= 1) {
+            return 0;
+        }
+        ArrayList<Pack> result = new ArrayList<>();
+        if (!ids.isEmpty()) {
+            result.add(Pack.write(this, new ArrayList<>(ids),
+                    Utils.join(_dir, PACK_DIR)));
+        }
+        for (Pack pack : old) {
+            if (result.isEmpty()
+                    || !pack.packFile().equals(result.get(0).packFile())) {
+                pack.idxFile().delete();
+                pack.packFile().delete();
+            }
+        }
+        synchronized (this) {
+            _packs = result;
+        }
+        for (String id : loose) {
+            File file = path(id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+        return dropped;
+    }
+
+    /** Remove and return the loose object files written since the last
+     *  call, which may not yet be durable on disk.
+     *
+     * @return the recently written object files.
+     */
+    List<File> takeUnsynced() {
+        ArrayList<File> result = new ArrayList<>();
+        for (File file = _unsynced.poll(); file != null;
+             file = _unsynced.poll()) {
+            result.add(file);
+        }
+        return result;
+    }
+
+    /** Root directory of this store. */
+    private final File _dir;
+
+    /** Loose object files written but not yet forced to disk. */
+    private final ConcurrentLinkedQueue<File> _unsynced =
+        new ConcurrentLinkedQueue<>();
+
+    /** Packs of this store, or null until first needed. */
+    private ArrayList<Pack> _packs;
+}
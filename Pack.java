@@ -0,0 +1,467 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/** A packfile: many objects of one ObjectStore rolled into a single file,
+ *  together with a sorted index mapping object ids to offsets.  Objects
+ *  are stored either whole or as a copy/insert delta against a similar
+ *  base object.  The index is memory-mapped and searched by bisection;
+ *  the data is mapped in windows as it is read.
+ *  @author Nhu Vu
+ */
+class Pack {
+
+    /** Magic number at the start of an index file. */
+    static final int IDX_MAGIC = 0x47494458;
+
+    /** Magic number at the start of a pack file. */
+    static final int PACK_MAGIC = 0x4750414b;
+
+    /** Current pack format version. */
+    static final int VERSION = 1;
+
+    /** Length in bytes of a binary object id. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Size in bytes of one index row: id followed by offset. */
+    static final int ROW = ID_BYTES + 8;
+
+    /** Size in bytes of the index header. */
+    static final int IDX_HEADER = 12;
+
+    /** Size in bytes of the pack header. */
+    static final int PACK_HEADER = 12;
+
+    /** Size in bytes of the header of each pack entry: type and length. */
+    static final int ENTRY_HEADER = 5;
+
+    /** Size in bytes of the windows in which pack data is mapped. */
+    static final long MAP_WINDOW = 1L << 28;
+
+    /** Entry type of an object stored whole. */
+    static final byte WHOLE = 0;
+
+    /** Entry type of an object stored as a delta. */
+    static final byte DELTA = 1;
+
+    /** Delta instruction copying a range of the base. */
+    static final byte COPY = 0;
+
+    /** Delta instruction inserting literal bytes. */
+    static final byte INSERT = 1;
+
+    /** Size in bytes of the blocks matched between base and target. */
+    static final int BLOCK = 16;
+
+    /** Number of preceding objects tried as delta bases. */
+    static final int WINDOW = 10;
+
+    /** Longest chain of deltas allowed before storing an object whole. */
+    static final int MAX_DEPTH = 16;
+
+    /** A pack whose index is IDXFILE and whose data is PACKFILE.
+     *
+     * @param idxFile for the index file.
+     * @param packFile for the pack file.
+     */
+    Pack(File idxFile, File packFile) {
+        _idxFile = idxFile;
+        _packFile = packFile;
+        _index = map(idxFile);
+        if (_index.getInt(0) != IDX_MAGIC) {
+            throw Utils.error("corrupt pack index %s", idxFile);
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the index file of this pack. */
+    File idxFile() {
+        return _idxFile;
+    }
+
+    /** Return the data file of this pack. */
+    File packFile() {
+        return _packFile;
+    }
+
+    /** Return true iff this pack holds object ID.
+     *
+     * @param id for object id.
+     * @return whether ID is in this pack.
+     */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Return the id in row K of the index.
+     *
+     * @param k for row number.
+     * @return the hexadecimal id.
+     */
+    String idAt(int k) {
+        byte[] key = new byte[ID_BYTES];
+        _index.get(IDX_HEADER + k * ROW, key);
+        return toHex(key);
+    }
+
+    /** Return the ids of all objects in this pack, in sorted order. */
+    List<String> ids() {
+        ArrayList<String> result = new ArrayList<>(_count);
+        for (int k = 0; k < _count; k += 1) {
+            result.add(idAt(k));
+        }
+        return result;
+    }
+
+    /** Return the ids in this pack that start with PREFIX, in sorted
+     *  order, stopping after LIMIT matches.  The first match is found by
+     *  bisection.
+     *
+     * @param prefix for abbreviated id.
+     * @param limit for maximum number of matches.
+     * @return the matching ids.
+     */
+    List<String> idsWithPrefix(String prefix, int limit) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = lo; k < _count && result.size() < limit; k += 1) {
+            String id = idAt(k);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Return the contents of object ID, resolving delta bases through
+     *  STORE, or null if ID is not in this pack.
+     *
+     * @param id for object id.
+     * @param store for store resolving delta bases.
+     * @return the contents of the object.
+     */
+    byte[] read(String id, ObjectStore store) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        long offset = _index.getLong(IDX_HEADER + k * ROW + ID_BYTES);
+        ByteBuffer header = data(offset, ENTRY_HEADER);
+        byte type = header.get();
+        byte[] payload = new byte[header.getInt()];
+        data(offset + ENTRY_HEADER, payload.length).get(payload);
+        byte[] raw = Utils.decompress(payload);
+        if (type == WHOLE) {
+            return raw;
+        }
+        ByteBuffer delta = ByteBuffer.wrap(raw);
+        byte[] baseId = new byte[ID_BYTES];
+        delta.get(baseId);
+        byte[] base = store.get(toHex(baseId));
+        return applyDelta(base, delta);
+    }
+
+    /** Return the row of ID in the index, or -1 if absent. */
+    private int find(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        byte[] probe = new byte[ID_BYTES];
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            _index.get(IDX_HEADER + mid * ROW, probe);
+            int c = Arrays.compareUnsigned(probe, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return a buffer positioned at the LENGTH bytes of pack data at
+     *  OFFSET.  The data is mapped in windows of MAP_WINDOW bytes on
+     *  first use, so packs larger than a single mapping can hold are
+     *  read; a range crossing a window boundary is mapped on its own.
+     *
+     * @param offset for offset in the pack file.
+     * @param length for number of bytes.
+     * @return the buffer.
+     */
+    private synchronized ByteBuffer data(long offset, int length) {
+        long start = offset - offset % MAP_WINDOW;
+        if (offset + length > start + MAP_WINDOW) {
+            return map(_packFile, offset, length);
+        }
+        ByteBuffer window = _windows.get(start);
+        if (window == null) {
+            window = map(_packFile, start,
+                    Math.min(MAP_WINDOW, _packFile.length() - start));
+            _windows.put(start, window);
+        }
+        return window.duplicate().position((int) (offset - start));
+    }
+
+    /** Write the objects IDS of STORE into a new pack in directory DIR.
+     *  Returns the new pack.  Objects are streamed: a first pass reads
+     *  each one only to learn its size, and a second writes them in order
+     *  of size, trying each of the WINDOW objects before it as a delta
+     *  base, so that at most WINDOW + 1 objects are held in memory.  Both
+     *  files are written under temporary names, forced to disk, and
+     *  renamed into place, the index last; DIR is then forced too, so the
+     *  caller may delete the objects' other copies once this returns.
+     *
+     * @param store for store holding the objects.
+     * @param ids for ids of the objects to pack.
+     * @param dir for directory receiving the pack.
+     * @return the written pack.
+     */
+    static Pack write(ObjectStore store, List<String> ids, File dir) {
+        ArrayList<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        HashMap<String, Integer> sizes = new HashMap<>();
+        for (String id : sorted) {
+            sizes.put(id, store.get(id).length);
+        }
+        ArrayList<String> bySize = new ArrayList<>(sorted);
+        bySize.sort(Comparator.comparingInt(sizes::get));
+
+        String name = "pack-" + Utils.sha1(String.join("", sorted));
+        File packFile = Utils.join(dir, name + ".pack");
+        File idxFile = Utils.join(dir, name + ".idx");
+        File packTemp = Utils.join(dir, name + ".pack.tmp");
+        File idxTemp = Utils.join(dir, name + ".idx.tmp");
+        dir.mkdirs();
+        HashMap<String, Long> offsets = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        ArrayDeque<String> window = new ArrayDeque<>();
+        HashMap<String, byte[]> contents = new HashMap<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(packTemp.toPath())))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            long offset = PACK_HEADER;
+            for (String id : bySize) {
+                byte[] target = store.get(id);
+                byte[] best = null;
+                for (String base : window) {
+                    int depth = depths.getOrDefault(base, 0);
+                    if (depth >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] delta = delta(base, contents.get(base), target);
+                    if (delta.length < target.length / 2
+                            && (best == null || delta.length < best.length)) {
+                        best = delta;
+                        depths.put(id, depth + 1);
+                    }
+                }
+                byte[] payload = Utils.compress(best == null ? target : best);
+                offsets.put(id, offset);
+                out.writeByte(best == null ? WHOLE : DELTA);
+                out.writeInt(payload.length);
+                out.write(payload);
+                offset += ENTRY_HEADER + payload.length;
+                window.addLast(id);
+                contents.put(id, target);
+                if (window.size() > WINDOW) {
+                    contents.remove(window.removeFirst());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(idxTemp.toPath())))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (String id : sorted) {
+                out.write(toBytes(id));
+                out.writeLong(offsets.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.force(packTemp);
+        Utils.force(idxTemp);
+        Utils.rename(packTemp, packFile);
+        Utils.rename(idxTemp, idxFile);
+        Utils.force(dir);
+        return new Pack(idxFile, packFile);
+    }
+
+    /** Return a delta turning BASE, whose id is BASEID, into TARGET.  A
+     *  delta is the base id followed by a sequence of instructions, each
+     *  either copying a range of the base or inserting literal bytes.
+     *  Matches are found by indexing the base in blocks of BLOCK bytes. */
+    static byte[] delta(String baseId, byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int k = 0; k + BLOCK <= base.length; k += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, k), k);
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(stream);
+        try {
+            out.write(toBytes(baseId));
+            int pending = 0;
+            int i = 0;
+            while (i < target.length) {
+                int length = 0;
+                Integer at = null;
+                if (i + BLOCK <= target.length) {
+                    at = blocks.get(blockHash(target, i));
+                }
+                if (at != null) {
+                    while (at + length < base.length
+                            && i + length < target.length
+                            && base[at + length] == target[i + length]) {
+                        length += 1;
+                    }
+                }
+                if (length < BLOCK) {
+                    pending += 1;
+                    i += 1;
+                    continue;
+                }
+                if (pending > 0) {
+                    out.writeByte(INSERT);
+                    out.writeInt(pending);
+                    out.write(target, i - pending, pending);
+                    pending = 0;
+                }
+                out.writeByte(COPY);
+                out.writeInt(at);
+                out.writeInt(length);
+                i += length;
+            }
+            if (pending > 0) {
+                out.writeByte(INSERT);
+                out.writeInt(pending);
+                out.write(target, i - pending, pending);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return stream.toByteArray();
+    }
+
+    /** Return the object obtained by applying DELTA, positioned just
+     *  after its base id, to BASE. */
+    static byte[] applyDelta(byte[] base, ByteBuffer delta) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        while (delta.hasRemaining()) {
+            byte op = delta.get();
+            if (op == COPY) {
+                int at = delta.getInt();
+                int length = delta.getInt();
+                result.write(base, at, length);
+            } else {
+                byte[] literal = new byte[delta.getInt()];
+                delta.get(literal);
+                result.write(literal, 0, literal.length);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START. */
+    private static int blockHash(byte[] data, int start) {
+        int h = 1;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Return FILE mapped read-only into memory. */
+    private static MappedByteBuffer map(File file) {
+        return map(file, 0, file.length());
+    }
+
+    /** Return the LENGTH bytes of FILE at OFFSET mapped read-only into
+     *  memory. */
+    private static MappedByteBuffer map(File file, long offset,
+                                        long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the binary form of hexadecimal id ID. */
+    static byte[] toBytes(String id) {
+        byte[] result = new byte[id.length() / 2];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = (byte) Integer.parseInt(
+                    id.substring(2 * k, 2 * k + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal form of binary id ID. */
+    static String toHex(byte[] id) {
+        StringBuilder result = new StringBuilder(2 * id.length);
+        for (byte b : id) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Index file of this pack. */
+    private final File _idxFile;
+
+    /** Data file of this pack. */
+    private final File _packFile;
+
+    /** Memory-mapped index. */
+    private final MappedByteBuffer _index;
+
+    /** Mapped windows of pack data, by offset. */
+    private final HashMap<Long, ByteBuffer> _windows = new HashMap<>();
+
+    /** Number of objects in this pack. */
+    private final int _count;
+}
@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** A repository taking part in a transfer: another repository on a path
+ *  reachable from this one, or this repository itself.  A transfer is
+ *  negotiated over commit ancestry.  The sender walks back through
+ *  every parent of the commit the receiver wants, asking the receiver
+ *  whether it has each commit reachable from one of its branches, and
+ *  stops along each line of history at the first it has; the receiver
+ *  answers from its commit graph.  Only the commits
+ *  above that point, and the trees, blobs, chunks and manifests they
+ *  introduce that the receiver lacks, are then sent as one Bundle.
+ *  @author Nhu Vu
+ */
+class Remote {
+
+    /** The repository in directory DIR, whose commit graph is GRAPH,
+     *  using stores COMMITS, TREES and BLOBS.
+     *
+     * @param dir for the .gitlet directory.
+     * @param commits for its commit store.
+     * @param trees for its tree store.
+     * @param blobs for its blob store.
+     * @param graph for its commit graph.
+     */
+    private Remote(File dir, ObjectStore commits, ObjectStore trees,
+                   BlobStore blobs, CommitGraph graph) {
+        _dir = dir;
+        _commits = commits;
+        _trees = trees;
+        _blobs = blobs;
+        _graph = graph;
+    }
+
+    /** Return this repository. */
+    static Remote local() {
+        return new Remote(Gitlet.GITLET_REPO, Gitlet.COMMITS, Gitlet.TREES,
+                Gitlet.BLOBS, Gitlet.graph());
+    }
+
+    /** Return the repository whose .gitlet directory is DIR.
+     *
+     * @param dir for the .gitlet directory.
+     * @return the repository.
+     */
+    static Remote open(File dir) {
+        return new Remote(dir,
+                new ObjectStore(in(dir, Gitlet.COMMITS_DIR)),
+                new ObjectStore(in(dir, Gitlet.TREES_DIR)),
+                new BlobStore(in(dir, Gitlet.BLOBS_DIR),
+                        in(dir, Gitlet.MANIFESTS_DIR)),
+                new CommitGraph(in(dir, Gitlet.GRAPH_FILE)));
+    }
+
+    /** Return the file of the repository in DIR corresponding to FILE of
+     *  this repository.
+     *
+     * @param dir for the .gitlet directory.
+     * @param file for a file in this repository's .gitlet directory.
+     * @return the corresponding file.
+     */
+    static File in(File dir, File file) {
+        return Utils.join(dir, file.getName());
+    }
+
+    /** Return the store holding objects of Bundle kind KIND.
+     *
+     * @param kind for object kind.
+     * @return the store.
+     */
+    ObjectStore store(byte kind) {
+        switch (kind) {
+        case Bundle.COMMIT:
+            return _commits;
+        case Bundle.TREE:
+            return _trees;
+        case Bundle.BLOB:
+            return _blobs;
+        case Bundle.MANIFEST:
+            return _blobs.manifests();
+        default:
+            throw Utils.error("Corrupt bundle.");
+        }
+    }
+
+    /** Return the head of branch NAME, or null if there is no such
+     *  branch.
+     *
+     * @param name for branch name.
+     * @return the commit hash, or null.
+     */
+    String head(String name) {
+        File ref = Utils.join(in(_dir, Gitlet.BRANCH_DIR), name + ".txt");
+        return ref.isFile() ? Utils.readContentsAsString(ref) : null;
+    }
+
+    /** Point branch NAME at commit HASH, once the objects received so far
+     *  are durable.
+     *
+     * @param name for branch name.
+     * @param hash for commit hash.
+     */
+    void setHead(String name, String hash) {
+        File ref = Utils.join(in(_dir, Gitlet.BRANCH_DIR), name + ".txt");
+        ref.getParentFile().mkdirs();
+        Journal tx = new Journal(in(_dir, Gitlet.JOURNAL_FILE),
+                _commits, _trees, _blobs);
+        tx.write(ref, hash.getBytes(StandardCharsets.UTF_8));
+        tx.commit();
+    }
+
+    /** Return true iff this repository has commit HASH reachable from one
+     *  of its branches, and so every object that commit refers to.
+     *
+     * @param hash for commit hash.
+     * @return whether the commit need not be sent.
+     */
+    boolean has(String hash) {
+        if (!_commits.contains(hash)) {
+            return false;
+        }
+        int id = _graph.id(hash);
+        if (id == CommitGraph.NONE) {
+            _graph.load();
+            id = _graph.id(hash);
+        }
+        if (id == CommitGraph.NONE) {
+            return false;
+        }
+        if (_heads == null) {
+            _heads = new ArrayList<>();
+            File branches = in(_dir, Gitlet.BRANCH_DIR);
+            for (String name : Gitlet.branchNames(branches)) {
+                _heads.add(_graph.id(Utils.readContentsAsString(
+                        Utils.join(branches, name + ".txt"))));
+            }
+        }
+        for (int head : _heads) {
+            if (head != CommitGraph.NONE && _graph.isAncestor(id, head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Send RECEIVER the commits it lacks up to and including WANT, with
+     *  the objects they need, each commit after its parents.  Returns the
+     *  number of objects sent.
+     *
+     * @param want for the commit to transfer.
+     * @param receiver for the receiving repository.
+     * @return the number of objects sent.
+     */
+    int send(String want, Remote receiver) {
+        ArrayList<Commit> missing = new ArrayList<>();
+        HashMap<String, Boolean> placed = new HashMap<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(want);
+        while (!work.isEmpty()) {
+            String hash = work.peek();
+            if (placed.containsKey(hash)) {
+                work.pop();
+                continue;
+            } else if (receiver.has(hash)) {
+                work.pop();
+                placed.put(hash, false);
+                continue;
+            }
+            Commit c = commit(hash);
+            boolean ready = true;
+            for (String parent : c.parentHashes()) {
+                if (!placed.containsKey(parent)) {
+                    work.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                work.pop();
+                placed.put(hash, true);
+                missing.add(c);
+            }
+        }
+        Bundle bundle = new Bundle(this);
+        HashSet<String> seen = new HashSet<>();
+        for (Commit c : missing) {
+            String base = c.parentHash() == null
+                ? null : commit(c.parentHash()).tree();
+            addTree(bundle, c.tree(), base, receiver, seen);
+            if (!receiver._commits.contains(c.getCommitHash())) {
+                bundle.add(Bundle.COMMIT, c.getCommitHash());
+            }
+        }
+        if (bundle.size() > 0) {
+            try (InputStream in = bundle.open()) {
+                receiver.receive(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return bundle.size();
+    }
+
+    /** Store the bundle read from IN, recording its commits in the commit
+     *  graph and message index.
+     *
+     * @param in for the bundle.
+     */
+    void receive(InputStream in) {
+        MessageIndex index = new MessageIndex(
+                in(_dir, Gitlet.MESSAGE_INDEX),
+                in(_dir, Gitlet.MESSAGE_JOURNAL));
+        for (Commit c : Bundle.unpack(in, this)) {
+            _graph.add(c);
+            index.add(c);
+        }
+    }
+
+    /** Add to BUNDLE tree TREE and the trees and blobs beneath it that
+     *  are not in tree BASE, which the receiver has or is being sent, nor
+     *  in RECEIVER or SEEN.  Objects are added after those they refer to.
+     */
+    private void addTree(Bundle bundle, String tree, String base,
+                         Remote receiver, Set<String> seen) {
+        if (tree == null || tree.equals(base) || !seen.add(tree)) {
+            return;
+        }
+        Tree t = Tree.decode(_trees.get(tree));
+        Tree b = base == null ? new Tree() : Tree.decode(_trees.get(base));
+        for (Map.Entry<String, String> e : t.trees().entrySet()) {
+            addTree(bundle, e.getValue(), b.trees().get(e.getKey()),
+                    receiver, seen);
+        }
+        for (Map.Entry<String, String> e : t.blobs().entrySet()) {
+            if (!e.getValue().equals(b.blobs().get(e.getKey()))) {
+                addBlob(bundle, e.getValue(), receiver, seen);
+            }
+        }
+        if (!receiver._trees.contains(tree)) {
+            bundle.add(Bundle.TREE, tree);
+        }
+    }
+
+    /** Add to BUNDLE blob ID, or its chunks and manifest, unless RECEIVER
+     *  has them or they are in SEEN. */
+    private void addBlob(Bundle bundle, String id, Remote receiver,
+                         Set<String> seen) {
+        if (!seen.add(id)) {
+            return;
+        }
+        List<String> chunks = _blobs.chunks(id);
+        if (chunks == null) {
+            if (!receiver._blobs.contains(id)) {
+                bundle.add(Bundle.BLOB, id);
+            }
+            return;
+        }
+        for (String chunk : chunks) {
+            if (seen.add(chunk) && !receiver._blobs.contains(chunk)) {
+                bundle.add(Bundle.BLOB, chunk);
+            }
+        }
+        if (!receiver._blobs.contains(id)) {
+            bundle.add(Bundle.MANIFEST, id);
+        }
+    }
+
+    /** Return commit HASH of this repository. */
+    private Commit commit(String hash) {
+        return Commit.decode(hash, _commits.get(hash));
+    }
+
+    /** The .gitlet directory. */
+    private final File _dir;
+
+    /** Store of commits. */
+    private final ObjectStore _commits;
+
+    /** Store of trees. */
+    private final ObjectStore _trees;
+
+    /** Store of blobs. */
+    private final BlobStore _blobs;
+
+    /** Commit graph. */
+    private final CommitGraph _graph;
+
+    /** Graph ids of the branch heads, or null until first needed. */
+    private List<Integer> _heads;
+}
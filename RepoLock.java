@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/** The repository lock, held for the whole of each command so that
+ *  several gitlet processes may share one repository.  Commands that only
+ *  read, such as log, status and find, hold it shared and run in
+ *  parallel; commands that change refs, the stage or the working tree
+ *  hold it exclusively.  The locks are taken with FileChannel.lock on the
+ *  lock file, so the operating system releases them if a process dies.
+ *
+ *  Readers still refresh derived files such as the stage's stat cache or
+ *  the compacted message index.  Those writes are serialized among
+ *  readers by a second, exclusive cache lock on another byte of the same
+ *  file, which writers never need since they already exclude readers.
+ *  @author Nhu Vu
+ */
+class RepoLock implements AutoCloseable {
+
+    /** Position in the lock file of the repository lock. */
+    static final long REPO_REGION = 0;
+
+    /** Position in the lock file of the cache lock. */
+    static final long CACHE_REGION = 1;
+
+    /** Acquire the repository lock in FILE, waiting for other processes,
+     *  shared if SHARED and exclusive otherwise.
+     *
+     * @param file for the lock file.
+     * @param shared for whether the command only reads.
+     * @return the held lock.
+     */
+    static RepoLock acquire(File file, boolean shared) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                FileLock lock = channel.lock(REPO_REGION, 1, shared);
+                _held = new RepoLock(channel, lock);
+                return _held;
+            } catch (IOException | RuntimeException excp) {
+                channel.close();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Acquire the repository lock of another repository in FILE,
+     *  shared if SHARED and exclusive otherwise, without waiting, so that
+     *  two repositories transferring to each other cannot deadlock.  The
+     *  lock is not the one cache refers to.
+     *
+     * @param file for the other repository's lock file.
+     * @param shared for whether the other repository is only read.
+     * @return the held lock, or null if another command holds it.
+     */
+    static RepoLock tryAcquire(File file, boolean shared) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                FileLock lock = channel.tryLock(REPO_REGION, 1, shared);
+                if (lock == null) {
+                    channel.close();
+                    return null;
+                }
+                return new RepoLock(channel, lock);
+            } catch (OverlappingFileLockException excp) {
+                channel.close();
+                return null;
+            } catch (IOException | RuntimeException excp) {
+                channel.close();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a lock to be closed once a reader has finished writing
+     *  derived files.  If no repository lock is held shared, it does
+     *  nothing, as no other process can be writing; otherwise it waits
+     *  for other readers' cache writes.  Nested calls are allowed.
+     *
+     * @return the held cache lock.
+     */
+    static Cache cache() {
+        RepoLock held = _held;
+        if (held == null || !held._lock.isShared()) {
+            return () -> { };
+        }
+        if (held._cacheDepth == 0) {
+            try {
+                held._cache = held._channel.lock(CACHE_REGION, 1, false);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        held._cacheDepth += 1;
+        return held::releaseCache;
+    }
+
+    /** A held cache lock, released by close. */
+    interface Cache extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Release the cache lock once every nested holder is done. */
+    private void releaseCache() {
+        _cacheDepth -= 1;
+        if (_cacheDepth == 0) {
+            try {
+                _cache.release();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                _cache = null;
+            }
+        }
+    }
+
+    /** A repository lock LOCK held through CHANNEL. */
+    private RepoLock(FileChannel channel, FileLock lock) {
+        _channel = channel;
+        _lock = lock;
+    }
+
+    @Override
+    public void close() {
+        if (_held == this) {
+            _held = null;
+        }
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The repository lock held by the command in progress, or null. */
+    private static RepoLock _held;
+
+    /** Channel open on the lock file. */
+    private final FileChannel _channel;
+
+    /** The repository lock. */
+    private final FileLock _lock;
+
+    /** The cache lock while held, else null. */
+    private FileLock _cache;
+
+    /** Number of nested holders of the cache lock. */
+    private int _cacheDepth;
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The sparse-checkout patterns of a repository, naming the paths that
+ *  are materialized in the working directory.  Commits still record the
+ *  whole tree; paths outside the patterns are simply never read out of
+ *  the blob store or written.  With no patterns, every path is included.
+ *
+ *  A pattern ending in "/" names a directory and everything beneath it.
+ *  A pattern containing "*", "?", "[" or "{" is a glob, as for
+ *  java.nio.file.PathMatcher, and includes a path if it matches the path
+ *  or one of its directories.  Any other pattern names a file, or a
+ *  directory and everything beneath it.
+ *  @author Nhu Vu
+ */
+class SparseCheckout {
+
+    /** Patterns including every path. */
+    SparseCheckout() {
+        this(new ArrayList<>());
+    }
+
+    /** Patterns PATTERNS.
+     *
+     * @param patterns for the patterns.
+     */
+    SparseCheckout(List<String> patterns) {
+        _patterns = new ArrayList<>();
+        _globs = new ArrayList<>();
+        for (String pattern : patterns) {
+            String p = pattern.startsWith("/") ? pattern.substring(1)
+                : pattern;
+            if (p.isEmpty()) {
+                continue;
+            }
+            _patterns.add(p);
+            _globs.add(isGlob(p)
+                    ? FileSystems.getDefault().getPathMatcher("glob:" + p)
+                    : null);
+        }
+    }
+
+    /** Return the patterns stored in FILE, which include every path if
+     *  FILE does not exist.
+     *
+     * @param file for pattern file.
+     * @return the patterns.
+     */
+    static SparseCheckout read(File file) {
+        if (!file.isFile()) {
+            return new SparseCheckout();
+        }
+        ArrayList<String> patterns = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (!line.isBlank()) {
+                patterns.add(line.strip());
+            }
+        }
+        return new SparseCheckout(patterns);
+    }
+
+    /** Store these patterns in FILE, atomically, or delete FILE if they
+     *  include every path.
+     *
+     * @param file for pattern file.
+     */
+    void write(File file) {
+        if (isFull()) {
+            file.delete();
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(temp, String.join("\n", _patterns) + "\n");
+        Utils.rename(temp, file);
+    }
+
+    /** Return the patterns. */
+    List<String> patterns() {
+        return _patterns;
+    }
+
+    /** Return true iff every path is included. */
+    boolean isFull() {
+        return _patterns.isEmpty();
+    }
+
+    /** Return true iff working path NAME is included.
+     *
+     * @param name for path relative to the working directory.
+     * @return whether NAME is materialized.
+     */
+    boolean includes(String name) {
+        if (isFull()) {
+            return true;
+        }
+        for (int k = 0; k < _patterns.size(); k += 1) {
+            String p = _patterns.get(k);
+            PathMatcher glob = _globs.get(k);
+            if (glob != null) {
+                for (Path path = Paths.get(name); path != null;
+                     path = path.getParent()) {
+                    if (glob.matches(path)) {
+                        return true;
+                    }
+                }
+            } else if (p.endsWith("/") ? name.startsWith(p)
+                       : name.equals(p) || name.startsWith(p + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff PATTERN is a glob. */
+    private static boolean isGlob(String pattern) {
+        return pattern.matches(".*[*?\\[{].*");
+    }
+
+    /** The patterns, without leading slashes. */
+    private final ArrayList<String> _patterns;
+
+    /** The matcher of each glob pattern, or null for other patterns. */
+    private final ArrayList<PathMatcher> _globs;
+}
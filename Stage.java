@@ -1,18 +1,30 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
 
-/** Staging area.
+/** Staging area.  Besides the files staged for addition and removal,
+ * the stage keeps the stat data of working files it has hashed, so that
+ * unchanged files are not hashed again, and the token of the file
+ * monitor at which that data was last known to be current.
  * @author Nhu Vu
  */
 public class Stage implements Serializable {
 
+    /** Serialization version, that of the stage before stat data was
+     *  kept, so that stages saved then are still read. */
+    private static final long serialVersionUID = 22836497507638423L;
+
     /** Staging area for adding and removing changes to working dir. */
     public Stage() {
         _added = new HashMap<String, String>();
         _removed = new ArrayList<>();
+        _stats = new HashMap<>();
     }
 
     /** Add file to added_files in staging area.
@@ -48,7 +60,107 @@ public class Stage implements Serializable {
         return _removed;
     }
 
-    /** Meant for committing, clear the staging area. */
+    /** Return the recorded hash of working file FILE, named NAME, if
+     *  its stat data is unchanged, and otherwise null.  While watched,
+     *  a recorded hash is returned without examining FILE.  Records
+     *  nothing, so it may be called from several threads at once.
+     *
+     * @param name for file name.
+     * @param file for working file.
+     * @return the recorded hash, or null.
+     */
+    public String cachedHash(String name, File file) {
+        FileStat cached = _stats.get(name);
+        if (cached != null
+                && (_watched || cached.matches(FileStat.of(file, null)))) {
+            return cached.hash();
+        }
+        return null;
+    }
+
+    /** Return the hash of working file FILE, named NAME, reusing the
+     *  recorded hash if its stat data is unchanged and otherwise reading
+     *  and hashing it and recording its stat data.
+     *
+     * @param name for file name.
+     * @param file for working file.
+     * @return the hash of the file contents.
+     */
+    public String hash(String name, File file) {
+        String cached = cachedHash(name, file);
+        if (cached != null) {
+            return cached;
+        }
+        String hash = Utils.sha1File(file);
+        record(name, file, hash);
+        return hash;
+    }
+
+    /** Record that working file FILE, named NAME, has hash HASH.
+     *
+     * @param name for file name.
+     * @param file for working file.
+     * @param hash for hash of the file contents.
+     */
+    public void record(String name, File file, String hash) {
+        FileStat stat = FileStat.of(file, hash);
+        if (stat == null) {
+            _stats.remove(name);
+        } else {
+            _stats.put(name, stat);
+        }
+        _statsChanged = true;
+    }
+
+    /** Bring the recorded stat data up to date using MONITOR, the file
+     *  monitor of working directory ROOT, if it is not null and synced.
+     *  Data of paths changed since the saved token is dropped, or, if the
+     *  monitor does not know that token, all data is checked against the
+     *  files.  What remains is trusted until this stage is reloaded.
+     *
+     * @param monitor for file monitor, or null.
+     * @param root for working directory.
+     */
+    public void watch(Monitor monitor, File root) {
+        String token = monitor == null ? null : monitor.token();
+        if (token == null) {
+            return;
+        }
+        Set<String> changed = monitor.changedSince(_token);
+        if (changed == null) {
+            _stats.entrySet().removeIf(e -> !e.getValue().matches(
+                    FileStat.of(new File(root, e.getKey()), null)));
+        } else {
+            _stats.keySet().removeAll(changed);
+        }
+        _watched = true;
+        if (!token.equals(_token)) {
+            _token = token;
+            _statsChanged = true;
+        }
+    }
+
+    /** Return true iff stat data has been recorded since this stage was
+     *  loaded. */
+    public boolean statsChanged() {
+        return _statsChanged;
+    }
+
+    /** Read this stage from IN, starting with no stat data if it was
+     *  saved before stat data was kept.
+     *
+     * @param in for the serialized stage.
+     */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (_stats == null) {
+            _stats = new HashMap<>();
+        }
+    }
+
+    /** Meant for committing, clear the staging area.  Recorded stat data
+     *  is kept. */
     public void clearStage() {
         _added = new HashMap<>();
         _removed = new ArrayList<>();
@@ -60,4 +172,18 @@ public class Stage implements Serializable {
     /** Data structure to keep track of my removed files. */
     private ArrayList<String> _removed;
 
+    /** Recorded stat data of working files, by file name. */
+    private HashMap<String, FileStat> _stats;
+
+    /** Token of the file monitor at which the stat data was current, or
+     *  null. */
+    private String _token;
+
+    /** True iff stat data was recorded since loading. */
+    private transient boolean _statsChanged;
+
+    /** True iff the stat data has been brought up to date by a file
+     *  monitor since loading. */
+    private transient boolean _watched;
+
 }
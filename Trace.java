@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters of the calls, bytes and nanoseconds spent in the primitive
+ *  operations of a command: object (de)serialization, file reads and
+ *  writes, hashing, directory listing and commit cache lookups.  Utils,
+ *  ObjectStore and CommitCache bracket each operation with start and
+ *  end; while tracing is off, start returns at once and end does
+ *  nothing, so the cost is one test of a static field.  The counters
+ *  are safe to update from worker threads.
+ *
+ *  Main turns tracing on for one command with --trace, which prints a
+ *  table to the standard error, or --metrics=FILE, which appends one
+ *  line of JSON per command to FILE.
+ *  @author Nhu Vu
+ */
+class Trace {
+
+    /** The traced operations. */
+    enum Op {
+        /** Utils.readObject and Utils.deserialize. */
+        READ_OBJECT("readObject"),
+        /** Utils.serialize, and so Utils.writeObject. */
+        WRITE_OBJECT("writeObject"),
+        /** Utils.readContents. */
+        READ_CONTENTS("readContents"),
+        /** Utils.writeContents. */
+        WRITE_CONTENTS("writeContents"),
+        /** Utils.sha1 and Utils.sha1File. */
+        SHA1("sha1"),
+        /** Utils.plainFilenamesIn and working-tree walks; bytes count
+         *  the names listed. */
+        LIST("listDirectory"),
+        /** ObjectStore.putFile, which hashes, compresses and writes. */
+        STORE_FILE("storeFile"),
+        /** ObjectStore.copyTo, which inflates an object into a file. */
+        COPY_OUT("copyOut"),
+        /** CommitCache.get answered from the cache. */
+        COMMIT_HIT("commitCacheHit"),
+        /** CommitCache.get reading and decoding the commit; bytes count
+         *  its encoding. */
+        COMMIT_MISS("commitCacheMiss");
+
+        /** An operation named NAME in reports. */
+        Op(String name) {
+            _name = name;
+        }
+
+        /** Return the name of this operation in reports. */
+        String label() {
+            return _name;
+        }
+
+        /** Name of this operation in reports. */
+        private final String _name;
+    }
+
+    /** Reset every counter and start tracing a command. */
+    static void begin() {
+        for (int k = 0; k < CALLS.length; k += 1) {
+            CALLS[k].reset();
+            BYTES[k].reset();
+            NANOS[k].reset();
+        }
+        _begun = System.nanoTime();
+        _enabled = true;
+    }
+
+    /** Stop tracing and return the nanoseconds since begin. */
+    static long finish() {
+        _enabled = false;
+        return System.nanoTime() - _begun;
+    }
+
+    /** Return the time at which an operation starts, or 0 if tracing
+     *  is off. */
+    static long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record one call of OP, begun at START as returned by start,
+     *  that processed BYTES bytes.
+     *
+     * @param op for operation.
+     * @param start for start time.
+     * @param bytes for bytes processed.
+     */
+    static void end(Op op, long start, long bytes) {
+        if (!_enabled) {
+            return;
+        }
+        int k = op.ordinal();
+        CALLS[k].increment();
+        BYTES[k].add(bytes);
+        NANOS[k].add(System.nanoTime() - start);
+    }
+
+    /** Print a table of the counters of command COMMAND, which took
+     *  TOTAL nanoseconds, on OUT.
+     *
+     * @param out for stream to print on.
+     * @param command for command name.
+     * @param total for duration of the command.
+     */
+    static void print(PrintStream out, String command, long total) {
+        out.printf("trace: %s %.3f ms%n", command, total / 1e6);
+        out.printf("trace: %-16s %10s %14s %12s%n",
+                "operation", "calls", "bytes", "ms");
+        for (Op op : Op.values()) {
+            int k = op.ordinal();
+            if (CALLS[k].sum() > 0) {
+                out.printf("trace: %-16s %10d %14d %12.3f%n", op.label(),
+                        CALLS[k].sum(), BYTES[k].sum(),
+                        NANOS[k].sum() / 1e6);
+            }
+        }
+    }
+
+    /** Append the counters of command COMMAND, which took TOTAL
+     *  nanoseconds, to FILE as one line of JSON.
+     *
+     * @param file for metrics file.
+     * @param command for command name.
+     * @param total for duration of the command.
+     */
+    static void append(File file, String command, long total) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"command\":\"")
+            .append(command.replace("\\", "\\\\").replace("\"", "\\\""))
+            .append("\",\"time\":").append(System.currentTimeMillis())
+            .append(",\"nanos\":").append(total).append(",\"ops\":{");
+        String sep = "";
+        for (Op op : Op.values()) {
+            int k = op.ordinal();
+            json.append(sep).append('"').append(op.label())
+                .append("\":{\"calls\":").append(CALLS[k].sum())
+                .append(",\"bytes\":").append(BYTES[k].sum())
+                .append(",\"nanos\":").append(NANOS[k].sum()).append('}');
+            sep = ",";
+        }
+        json.append("}}\n");
+        try {
+            Files.write(file.toPath(),
+                    json.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return N new counters. */
+    private static LongAdder[] counters(int n) {
+        LongAdder[] result = new LongAdder[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Number of calls of each operation. */
+    private static final LongAdder[] CALLS = counters(Op.values().length);
+
+    /** Bytes processed by each operation. */
+    private static final LongAdder[] BYTES = counters(Op.values().length);
+
+    /** Nanoseconds spent in each operation. */
+    private static final LongAdder[] NANOS = counters(Op.values().length);
+
+    /** True while a command is being traced. */
+    private static volatile boolean _enabled;
+
+    /** Time at which tracing began. */
+    private static long _begun;
+}
@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A tree object: the contents of one directory of a commit, mapping
+ *  each name to either a blob or a subtree.  Trees are stored by the
+ *  SHA-1 of their canonical encoding, so a directory that did not change
+ *  between commits is shared by both.
+ *  @author Nhu Vu
+ */
+class Tree {
+
+    /** Version of the binary encoding written by encode. */
+    static final int VERSION = 1;
+
+    /** Entry type of a blob. */
+    static final byte BLOB = 0;
+
+    /** Entry type of a subtree. */
+    static final byte TREE = 1;
+
+    /** An empty tree. */
+    Tree() {
+        _blobs = new TreeMap<>();
+        _trees = new TreeMap<>();
+    }
+
+    /** Return the blobs of this tree, by file name. */
+    TreeMap<String, String> blobs() {
+        return _blobs;
+    }
+
+    /** Return the subtrees of this tree, by directory name. */
+    TreeMap<String, String> trees() {
+        return _trees;
+    }
+
+    /** Return true iff this tree has no entries. */
+    boolean isEmpty() {
+        return _blobs.isEmpty() && _trees.isEmpty();
+    }
+
+    /** Return the canonical encoding of this tree: the format version and
+     *  its entries sorted by name. */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeByte(VERSION);
+            TreeSet<String> names = new TreeSet<>(_blobs.keySet());
+            names.addAll(_trees.keySet());
+            out.writeInt(names.size());
+            for (String name : names) {
+                boolean isBlob = _blobs.containsKey(name);
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(isBlob ? BLOB : TREE);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.write(Pack.toBytes(isBlob
+                        ? _blobs.get(name) : _trees.get(name)));
+            }
+            out.close();
+            return stream.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+    }
+
+    /** Return the tree whose encoding is CONTENTS.
+     *
+     * @param contents for encoded tree.
+     * @return the decoded tree.
+     */
+    static Tree decode(byte[] contents) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(contents));
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw Utils.error("Unknown tree version %d.", version);
+            }
+            Tree result = new Tree();
+            int count = in.readInt();
+            byte[] id = new byte[Pack.ID_BYTES];
+            for (int k = 0; k < count; k += 1) {
+                byte type = in.readByte();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                in.readFully(id);
+                String name = new String(bytes, StandardCharsets.UTF_8);
+                if (type == BLOB) {
+                    result._blobs.put(name, Pack.toHex(id));
+                } else {
+                    result._trees.put(name, Pack.toHex(id));
+                }
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree.");
+        }
+    }
+
+    /** Return the tree with hash HASH, or an empty tree if HASH is null.
+     *
+     * @param hash for tree hash.
+     * @return the tree.
+     */
+    static Tree read(String hash) {
+        if (hash == null) {
+            return new Tree();
+        }
+        return decode(Gitlet.TREES.get(hash));
+    }
+
+    /** Store TREE and return its hash.
+     *
+     * @param tree for tree to store.
+     * @return the tree hash.
+     */
+    static String write(Tree tree) {
+        byte[] contents = tree.encode();
+        String hash = Utils.sha1(contents);
+        Gitlet.TREES.put(hash, contents);
+        return hash;
+    }
+
+    /** Return the hash of the blob at PATH beneath the tree with hash
+     *  HASH, or null if there is none.  Only the trees along PATH are
+     *  read.
+     *
+     * @param hash for root tree hash.
+     * @param path for file path.
+     * @return the blob hash, or null.
+     */
+    static String lookup(String hash, String path) {
+        String[] names = path.split("/");
+        for (int k = 0; hash != null && k < names.length - 1; k += 1) {
+            hash = read(hash)._trees.get(names[k]);
+        }
+        return hash == null ? null : read(hash)._blobs.get(
+                names[names.length - 1]);
+    }
+
+    /** Return the paths of all blobs beneath the tree with hash HASH,
+     *  mapped to their blob hashes.
+     *
+     * @param hash for root tree hash.
+     * @return the flattened tree.
+     */
+    static HashMap<String, String> flatten(String hash) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(hash, "", result);
+        return result;
+    }
+
+    /** Add the blobs beneath tree HASH to RESULT, prefixing their names
+     *  with PREFIX. */
+    private static void flatten(String hash, String prefix,
+                                HashMap<String, String> result) {
+        Tree tree = read(hash);
+        for (Map.Entry<String, String> e : tree._blobs.entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree._trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + "/", result);
+        }
+    }
+
+    /** Return the hash of the tree obtained from tree HASH by applying
+     *  CHANGES, which maps paths to new blob hashes, or to null for paths
+     *  to delete.  Only trees on the paths of CHANGES are read and
+     *  written; every other subtree is shared with the original.
+     *
+     * @param hash for original root tree hash.
+     * @param changes for changed paths.
+     * @return the new root tree hash.
+     */
+    static String update(String hash, Map<String, String> changes) {
+        String result = updateTree(hash, changes);
+        return result == null ? write(new Tree()) : result;
+    }
+
+    /** Return the hash of tree HASH with CHANGES applied, or null if the
+     *  result is empty. */
+    private static String updateTree(String hash,
+                                     Map<String, String> changes) {
+        Tree tree = read(hash);
+        TreeMap<String, TreeMap<String, String>> nested = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (e.getValue() == null) {
+                    tree._blobs.remove(path);
+                } else {
+                    tree._blobs.put(path, e.getValue());
+                }
+            } else {
+                nested.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e
+                 : nested.entrySet()) {
+            String sub = updateTree(tree._trees.get(e.getKey()),
+                    e.getValue());
+            if (sub == null) {
+                tree._trees.remove(e.getKey());
+            } else {
+                tree._trees.put(e.getKey(), sub);
+            }
+        }
+        if (tree.isEmpty()) {
+            return null;
+        }
+        return write(tree);
+    }
+
+    /** Blobs of this tree, by file name. */
+    private final TreeMap<String, String> _blobs;
+
+    /** Subtrees of this tree, by directory name. */
+    private final TreeMap<String, String> _trees;
+}
@@ -4,6 +4,21 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +35,553 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Applying the hunks of LineDiff.diff to the old lines yields the
+     *  new ones. */
+    @Test
+    public void lineDiffTest() throws IOException {
+        String[][] pairs = {
+            {"", ""}, {"", "a\nb\n"}, {"a\nb\n", ""},
+            {"a\nb\nc\n", "a\nb\nc\n"}, {"a\nb\nc\n", "a\nx\nc\n"},
+            {"a\nb\nc\nd\n", "b\nc\ne\nd\nf\n"},
+            {"x\ny\nx\ny\nx\n", "y\nx\nx\ny\n"}, {"a\nb", "a\nb\n"},
+        };
+        for (String[] pair : pairs) {
+            HashMap<ByteBuffer, Integer> numbers = new HashMap<>();
+            ArrayList<byte[]> lines = new ArrayList<>();
+            int[] a = lines(pair[0], numbers, lines);
+            int[] b = lines(pair[1], numbers, lines);
+            ArrayList<Integer> result = new ArrayList<>();
+            int pos = 0;
+            for (int[] hunk : LineDiff.diff(a, b)) {
+                assertTrue(hunk[0] >= pos && hunk[1] >= hunk[0]);
+                for (; pos < hunk[0]; pos += 1) {
+                    result.add(a[pos]);
+                }
+                for (int k = hunk[2]; k < hunk[3]; k += 1) {
+                    result.add(b[k]);
+                }
+                pos = hunk[1];
+            }
+            for (; pos < a.length; pos += 1) {
+                result.add(a[pos]);
+            }
+            assertEquals(pair[1], text(result, lines));
+        }
+    }
+
+    /** Changes made on only one side, or the same on both, merge
+     *  cleanly. */
+    @Test
+    public void mergeOneSideTest() throws IOException {
+        String base = "a\nb\nc\nd\n";
+        assertEquals("a\nB\nc\nd\n",
+                merge(base, "a\nB\nc\nd\n", base, false));
+        assertEquals("a\nb\nc\nD\ne\n",
+                merge(base, base, "a\nb\nc\nD\ne\n", false));
+        assertEquals("A\nb\nc\nD\n",
+                merge(base, "A\nb\nc\nd\n", "a\nb\nc\nD\n", false));
+        assertEquals("a\nc\nd\n",
+                merge(base, "a\nc\nd\n", "a\nc\nd\n", false));
+        assertEquals("x\n", merge(null, "x\n", null, false));
+    }
+
+    /** Different changes to the same lines are marked as a conflict. */
+    @Test
+    public void mergeConflictTest() throws IOException {
+        assertEquals("a\n" + Merge3.OURS + "B1\n" + Merge3.SEPARATOR
+                + "B2\nB3\n" + Merge3.THEIRS + "c\n",
+                merge("a\nb\nc\n", "a\nB1\nc\n", "a\nB2\nB3\nc\n",
+                        true));
+        assertEquals(Merge3.OURS + "x\n" + Merge3.SEPARATOR + "y\n"
+                + Merge3.THEIRS, merge(null, "x\n", "y\n", true));
+    }
+
+    /** Bytes that are not UTF-8 pass through a merge unchanged. */
+    @Test
+    public void mergeBinaryTest() throws IOException {
+        byte[] base = {(byte) 0xff, '\n', 'm', '\n', (byte) 0xc3, 0, 'z'};
+        byte[] ours = {(byte) 0xff, '\n', 'm', '\n', (byte) 0xc3, 1, 'z'};
+        byte[] theirs = {(byte) 0xfe, '\n', 'm', '\n', (byte) 0xc3, 0, 'z'};
+        byte[] expected = {(byte) 0xfe, '\n', 'm', '\n', (byte) 0xc3, 1, 'z'};
+        HashMap<ByteBuffer, Integer> numbers = new HashMap<>();
+        ArrayList<byte[]> lines = new ArrayList<>();
+        int[] o = Merge3.lines(new ByteArrayInputStream(base), numbers, lines);
+        int[] a = Merge3.lines(new ByteArrayInputStream(ours), numbers, lines);
+        int[] b =
+            Merge3.lines(new ByteArrayInputStream(theirs), numbers, lines);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(Merge3.merge(o, a, b, lines, out));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    /** A file deleted on one side and changed on the other is written
+     *  as a conflict without decoding the surviving version. */
+    @Test
+    public void conflictBinaryTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-conflict").toFile();
+        ObjectStore store = new ObjectStore(new File(root, "objects"));
+        byte[] ours = {(byte) 0xff, '\n', (byte) 0xc3, 0, 'z'};
+        String id = Utils.sha1(ours);
+        store.put(id, ours);
+        File file = new File(root, "dir/f.bin");
+        Merge3.conflict(store, id, null, file);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes(Merge3.OURS.getBytes(StandardCharsets.UTF_8));
+        expected.writeBytes(ours);
+        expected.writeBytes(
+                Merge3.SEPARATOR.getBytes(StandardCharsets.UTF_8));
+        expected.writeBytes(Merge3.THEIRS.getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected.toByteArray(),
+                Files.readAllBytes(file.toPath()));
+    }
+
+    /** Fetching and pulling copy a remote branch and its files. */
+    @Test
+    public void fetchPullTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-remote").toFile();
+        File a = repo(root, "a");
+        File b = repo(root, "b");
+        write(a, "f.txt", "one\n");
+        gitlet(a, "add", "f.txt");
+        gitlet(a, "commit", "one");
+        gitlet(b, "add-remote", "origin", "../a/.gitlet");
+        gitlet(b, "fetch", "origin", "master");
+        assertEquals(head(a, "master"), head(b, "origin/master"));
+        gitlet(b, "reset", head(a, "master"));
+        assertEquals("one\n", read(b, "f.txt"));
+        write(a, "g.txt", "two\n");
+        gitlet(a, "add", "g.txt");
+        gitlet(a, "commit", "two");
+        gitlet(b, "pull", "origin", "master");
+        assertEquals(head(a, "master"), head(b, "master"));
+        assertEquals("two\n", read(b, "g.txt"));
+    }
+
+    /** After a pull that merges, the merge can be pushed, and fetched
+     *  back by the other repository. */
+    @Test
+    public void pushAfterMergeTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-remote").toFile();
+        File a = repo(root, "a");
+        File b = repo(root, "b");
+        write(a, "f.txt", "one\n");
+        gitlet(a, "add", "f.txt");
+        gitlet(a, "commit", "one");
+        gitlet(b, "add-remote", "origin", "../a/.gitlet");
+        gitlet(b, "fetch", "origin", "master");
+        gitlet(b, "reset", head(a, "master"));
+        write(b, "g.txt", "from b\n");
+        gitlet(b, "add", "g.txt");
+        gitlet(b, "commit", "b");
+        write(a, "h.txt", "from a\n");
+        gitlet(a, "add", "h.txt");
+        gitlet(a, "commit", "a");
+        assertEquals("Please pull down remote changes before pushing.\n",
+                gitlet(b, "push", "origin", "master"));
+        gitlet(b, "pull", "origin", "master");
+        assertEquals("from a\n", read(b, "h.txt"));
+        assertEquals("", gitlet(b, "push", "origin", "master"));
+        assertEquals(head(b, "master"), head(a, "master"));
+        gitlet(a, "add-remote", "b", "../b/.gitlet");
+        gitlet(a, "fetch", "b", "master");
+        assertEquals(head(b, "master"), head(a, "b/master"));
+        write(a, "i.txt", "again\n");
+        gitlet(a, "add", "i.txt");
+        gitlet(a, "commit", "again");
+        gitlet(b, "pull", "origin", "master");
+        assertEquals(head(a, "master"), head(b, "master"));
+        assertEquals("again\n", read(b, "i.txt"));
+    }
+
+    /** Pushing a merge sends the commits of both lines of history. */
+    @Test
+    public void pushMergedBranchTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-remote").toFile();
+        File a = repo(root, "a");
+        File b = repo(root, "b");
+        gitlet(b, "add-remote", "origin", "../a/.gitlet");
+        gitlet(b, "fetch", "origin", "master");
+        gitlet(b, "reset", head(a, "master"));
+        gitlet(b, "branch", "side");
+        gitlet(b, "checkout", "side");
+        write(b, "s.txt", "side\n");
+        gitlet(b, "add", "s.txt");
+        gitlet(b, "commit", "side");
+        gitlet(b, "checkout", "master");
+        write(b, "m.txt", "main\n");
+        gitlet(b, "add", "m.txt");
+        gitlet(b, "commit", "main");
+        gitlet(b, "merge", "side");
+        assertEquals("", gitlet(b, "push", "origin", "master"));
+        assertEquals(head(b, "master"), head(a, "master"));
+        gitlet(a, "checkout", "--", "m.txt");
+        assertEquals("main\n", read(a, "m.txt"));
+        gitlet(a, "checkout", head(b, "side"), "--", "s.txt");
+        assertEquals("side\n", read(a, "s.txt"));
+    }
+
+    /** Directories given with a trailing slash or a leading "./" stage
+     *  the same paths as the bare directory name. */
+    @Test
+    public void addDirectoryPathTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-add").toFile();
+        File a = repo(root, "a");
+        new File(a, "src/sub").mkdirs();
+        write(a, "src/a.txt", "a\n");
+        write(a, "src/sub/b.txt", "b\n");
+        gitlet(a, "add", "src/");
+        gitlet(a, "commit", "slash");
+        String status = gitlet(a, "status");
+        assertFalse(status.contains("//"));
+        assertTrue(status.contains("=== Untracked Files ===\n\n"));
+        write(a, "src/a.txt", "changed\n");
+        gitlet(a, "add", "./src");
+        status = gitlet(a, "status");
+        assertTrue(status.contains("=== Staged Files ===\nsrc/a.txt\n\n"));
+        gitlet(a, "commit", "dot");
+        gitlet(a, "checkout", "--", "src/sub/b.txt");
+        assertEquals("b\n", read(a, "src/sub/b.txt"));
+        assertTrue(gitlet(a, "status").contains(
+                "=== Untracked Files ===\n\n"));
+    }
+
+    /** Packed objects read back as they were stored, deltas included,
+     *  and no delta chain is longer than Pack.MAX_DEPTH. */
+    @Test
+    public void packRoundTripTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-pack").toFile();
+        ObjectStore store = new ObjectStore(new File(root, "objects"));
+        Random random = new Random(2);
+        byte[] data = new byte[4000];
+        random.nextBytes(data);
+        HashMap<String, byte[]> objects = new HashMap<>();
+        for (int k = 0; k < 3 * Pack.MAX_DEPTH; k += 1) {
+            byte[] contents = Arrays.copyOf(data, 1000 + 50 * k);
+            objects.put(Utils.sha1(contents), contents);
+        }
+        byte[] small = {0, 1, 2};
+        objects.put(Utils.sha1(small), small);
+        for (String id : objects.keySet()) {
+            store.put(id, objects.get(id));
+        }
+        assertEquals(objects.size(), store.pack());
+        assertTrue(store.looseIds().isEmpty());
+        for (String id : objects.keySet()) {
+            assertArrayEquals(objects.get(id),
+                    new ObjectStore(store.dir()).get(id));
+        }
+        Pack pack = store.packs().get(0);
+        ByteBuffer idx = ByteBuffer.wrap(
+                Files.readAllBytes(pack.idxFile().toPath()));
+        ByteBuffer entries = ByteBuffer.wrap(
+                Files.readAllBytes(pack.packFile().toPath()));
+        HashMap<String, String> bases = new HashMap<>();
+        for (int k = 0; k < pack.size(); k += 1) {
+            int row = Pack.IDX_HEADER + k * Pack.ROW;
+            byte[] id = new byte[Pack.ID_BYTES];
+            idx.get(row, id);
+            int offset = (int) idx.getLong(row + Pack.ID_BYTES);
+            if (entries.get(offset) == Pack.DELTA) {
+                byte[] payload = new byte[entries.getInt(offset + 1)];
+                entries.get(offset + Pack.ENTRY_HEADER, payload);
+                byte[] base = new byte[Pack.ID_BYTES];
+                ByteBuffer.wrap(Utils.decompress(payload)).get(base);
+                bases.put(Pack.toHex(id), Pack.toHex(base));
+            }
+        }
+        assertFalse(bases.isEmpty());
+        for (String id : bases.keySet()) {
+            int depth = 0;
+            for (String k = id; bases.containsKey(k); k = bases.get(k)) {
+                depth += 1;
+            }
+            assertTrue(depth <= Pack.MAX_DEPTH);
+        }
+    }
+
+    /** Ancestry and split points follow both parents of a merge. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-graph").toFile();
+        CommitGraph graph = new CommitGraph(new File(root, "commit-graph"));
+        String tree = Utils.sha1("tree");
+        Commit r = new Commit(null, "r", tree);
+        Commit a1 = new Commit(r.getCommitHash(), "a1", tree);
+        Commit b1 = new Commit(r.getCommitHash(), "b1", tree);
+        Commit m = new Commit(a1.getCommitHash(), b1.getCommitHash(),
+                "m", tree);
+        Commit a2 = new Commit(m.getCommitHash(), "a2", tree);
+        Commit b2 = new Commit(b1.getCommitHash(), "b2", tree);
+        for (Commit c : new Commit[] {r, a1, b1, m, a2, b2}) {
+            graph.add(c);
+        }
+        graph = new CommitGraph(new File(root, "commit-graph"));
+        assertFalse(graph.stale());
+        int ir = graph.id(r.getCommitHash());
+        int ia1 = graph.id(a1.getCommitHash());
+        int ib1 = graph.id(b1.getCommitHash());
+        int im = graph.id(m.getCommitHash());
+        int ia2 = graph.id(a2.getCommitHash());
+        int ib2 = graph.id(b2.getCommitHash());
+        assertEquals(3, graph.generation(im));
+        assertTrue(graph.isAncestor(ib1, ia2));
+        assertTrue(graph.isAncestor(ia1, ia2));
+        assertTrue(graph.isAncestor(ia2, ia2));
+        assertFalse(graph.isAncestor(ib2, ia2));
+        assertFalse(graph.isAncestor(ia2, ib1));
+        assertEquals(ir, graph.splitPoint(ia1, ib1));
+        assertEquals(ib1, graph.splitPoint(ia2, ib2));
+        assertEquals(im, graph.splitPoint(im, ia2));
+        assertEquals(ia1, graph.splitPoint(ia2, ia1));
+    }
+
+    /** Abbreviated commit ids resolve when unique, loose or packed, and
+     *  are reported when ambiguous or matching nothing. */
+    @Test
+    public void resolveCommitTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-resolve").toFile();
+        File a = repo(root, "a");
+        write(a, "f.txt", "one\n");
+        gitlet(a, "add", "f.txt");
+        gitlet(a, "commit", "one");
+        gitlet(a, "pack");
+        String head = head(a, "master");
+        ObjectStore commits = new ObjectStore(
+                new File(a, ".gitlet/" + Gitlet.COMMITS_DIR.getName()));
+        String twin = head.substring(0, 6)
+            + (head.charAt(6) == '0' ? '1' : '0') + head.substring(7);
+        commits.put(twin, commits.get(head));
+        write(a, "f.txt", "two\n");
+        assertEquals("Ambiguous commit id; use more characters.\n",
+                gitlet(a, "checkout", head.substring(0, 6), "--", "f.txt"));
+        assertEquals("two\n", read(a, "f.txt"));
+        assertEquals("", gitlet(a, "checkout",
+                head.substring(0, 7).toUpperCase(), "--", "f.txt"));
+        assertEquals("one\n", read(a, "f.txt"));
+        for (String id : new String[] {"zz", head + "0", "g" + twin}) {
+            assertEquals("No commit with that id exists.\n",
+                    gitlet(a, "checkout", id, "--", "f.txt"));
+        }
+    }
+
+    /** Inserting bytes into a chunked stream changes only the chunks
+     *  around the insertion, and the chunks always rebuild the stream. */
+    @Test
+    public void chunkerInsertTest() throws IOException {
+        byte[] data = new byte[4 << 20];
+        new Random(3).nextBytes(data);
+        int at = 1 << 20;
+        byte[] edited = new byte[data.length + 100];
+        System.arraycopy(data, 0, edited, 0, at);
+        System.arraycopy(data, at, edited, at + 100, data.length - at);
+        List<String> before = chunks(data);
+        List<String> after = chunks(edited);
+        assertTrue(before.size() > 16);
+        HashSet<String> kept = new HashSet<>(after);
+        int changed = 0;
+        for (String chunk : before) {
+            if (!kept.contains(chunk)) {
+                changed += 1;
+            }
+        }
+        assertTrue(changed <= 2);
+        assertEquals(before.get(0), after.get(0));
+        assertEquals(before.get(before.size() - 1),
+                after.get(after.size() - 1));
+    }
+
+    /** Recovery replays a complete journal, and discards a torn or
+     *  corrupt one along with leftover lock files. */
+    @Test
+    public void journalRecoverTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-journal").toFile();
+        File journal = new File(root, "journal");
+        File ref = new File(root, "master.txt");
+        File stage = new File(root, "stage.txt");
+        LinkedHashMap<File, byte[]> updates = new LinkedHashMap<>();
+        updates.put(ref, "new ref".getBytes(StandardCharsets.UTF_8));
+        updates.put(stage, "new stage".getBytes(StandardCharsets.UTF_8));
+        byte[] complete = Journal.encode(updates);
+        byte[] corrupt = complete.clone();
+        corrupt[10] ^= 1;
+        byte[][] damaged = {
+            Arrays.copyOf(complete, complete.length - 1),
+            Arrays.copyOf(complete, 12), corrupt, {},
+        };
+        for (byte[] contents : damaged) {
+            write(root, "master.txt", "old ref");
+            write(root, "stage.txt", "old stage");
+            write(root, "master.txt" + Journal.LOCK_SUFFIX, "new");
+            Files.write(journal.toPath(), contents);
+            Journal.recover(journal, root);
+            assertFalse(journal.exists());
+            assertFalse(new File(root, "master.txt" + Journal.LOCK_SUFFIX)
+                    .exists());
+            assertEquals("old ref", read(root, "master.txt"));
+            assertEquals("old stage", read(root, "stage.txt"));
+        }
+        write(root, "master.txt" + Journal.LOCK_SUFFIX, "new");
+        Files.write(journal.toPath(), complete);
+        Journal.recover(journal, root);
+        assertFalse(journal.exists());
+        assertEquals("new ref", read(root, "master.txt"));
+        assertEquals("new stage", read(root, "stage.txt"));
+        assertEquals(2, root.list().length);
+    }
+
+    /** Commit cache hits and misses are reported in the metrics. */
+    @Test
+    public void commitCacheMetricsTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-metrics").toFile();
+        File a = repo(root, "a");
+        write(a, "f.txt", "one\n");
+        gitlet(a, "add", "f.txt");
+        gitlet(a, "commit", "one");
+        File metrics = new File(root, "metrics.json");
+        gitlet(a, "--metrics=" + metrics.getPath(), "log");
+        String json = read(root, "metrics.json");
+        assertTrue(json.contains("\"commitCacheMiss\":{\"calls\":"));
+        assertFalse(json.contains("\"commitCacheMiss\":{\"calls\":0,"));
+        assertTrue(json.contains("\"commitCacheHit\":{\"calls\":"));
+    }
+
+    /** Queries see both compacted and journaled commits, and exact
+     *  matches include messages without tokens. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File root = Files.createTempDirectory("gitlet-find").toFile();
+        File file = new File(root, "message-index");
+        File journal = new File(root, "message-journal");
+        MessageIndex index = new MessageIndex(file, journal);
+        String[] messages = {"fix bug", "Fix  bug!", "!!!", "add feature"};
+        ArrayList<String> hashes = new ArrayList<>();
+        for (int k = 0; k < 2 * messages.length; k += 1) {
+            Commit c = new Commit(null, messages[k % messages.length],
+                    Utils.sha1("tree" + k));
+            hashes.add(c.getCommitHash());
+            index.add(c);
+            if (k == messages.length - 1) {
+                index.compact();
+            }
+        }
+        index = new MessageIndex(file, journal);
+        assertEquals(hashes.size(), index.size());
+        assertEquals(sorted(hashes.get(0), hashes.get(4)),
+                index.exact("fix bug"));
+        assertEquals(sorted(hashes.get(2), hashes.get(6)),
+                index.exact("!!!"));
+        assertEquals(sorted(hashes.get(0), hashes.get(1), hashes.get(4),
+                hashes.get(5)), index.tokens("BUG fix"));
+        assertEquals(sorted(hashes.get(3), hashes.get(7)),
+                index.substring("feat"));
+        assertTrue(index.exact("fix").isEmpty());
+        assertTrue(index.tokens("fix nothing").isEmpty());
+    }
+
+    /** Return IDS in sorted order. */
+    private static List<String> sorted(String... ids) {
+        ArrayList<String> result = new ArrayList<>(Arrays.asList(ids));
+        result.sort(null);
+        return result;
+    }
+
+    /** Return the ids of the chunks of DATA, checking that each chunk
+     *  is within the size limits and that together they make DATA. */
+    private static List<String> chunks(byte[] data) {
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        ArrayList<String> result = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            assertTrue(chunk.length >= Chunker.MIN_SIZE
+                    || out.size() + chunk.length == data.length);
+            out.writeBytes(chunk);
+            result.add(Utils.sha1(chunk));
+        }
+        assertArrayEquals(data, out.toByteArray());
+        return result;
+    }
+
+    /** Return the lines of TEXT as line numbers, numbered through NUMBERS
+     *  and LINES as by Merge3. */
+    private static int[] lines(String text,
+                               HashMap<ByteBuffer, Integer> numbers,
+                               ArrayList<byte[]> lines) throws IOException {
+        return Merge3.lines(new ByteArrayInputStream(
+                text.getBytes(StandardCharsets.UTF_8)), numbers, lines);
+    }
+
+    /** Return the text of line numbers SEQ, whose bytes are LINES. */
+    private static String text(List<Integer> seq, List<byte[]> lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int k : seq) {
+            out.writeBytes(lines.get(k));
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the merge of OURS and THEIRS against BASE, where null is an
+     *  absent file, checking that it conflicts iff CONFLICT. */
+    private static String merge(String base, String ours, String theirs,
+                                boolean conflict) throws IOException {
+        HashMap<ByteBuffer, Integer> numbers = new HashMap<>();
+        ArrayList<byte[]> lines = new ArrayList<>();
+        int[] o = lines(base == null ? "" : base, numbers, lines);
+        int[] a = lines(ours == null ? "" : ours, numbers, lines);
+        int[] b = lines(theirs == null ? "" : theirs, numbers, lines);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(conflict, Merge3.merge(o, a, b, lines, out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return directory NAME in ROOT, holding a new repository. */
+    private static File repo(File root, String name) throws IOException {
+        File dir = new File(root, name);
+        dir.mkdirs();
+        gitlet(dir, "init");
+        return dir;
+    }
+
+    /** Run gitlet with arguments ARGS in directory DIR, in a new process,
+     *  and return what it printed. */
+    private static String gitlet(File dir, String... args)
+        throws IOException {
+        String[] command = new String[args.length + 4];
+        command[0] = new File(System.getProperty("java.home"),
+                "bin/java").getPath();
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = "gitlet.Main";
+        System.arraycopy(args, 0, command, 4, args.length);
+        Process p = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        String out = new String(p.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        try {
+            p.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return out;
+    }
+
+    /** Return the head of branch BRANCH of the repository in DIR. */
+    private static String head(File dir, String branch) throws IOException {
+        return read(dir, ".gitlet/branches/" + branch + ".txt");
+    }
+
+    /** Return the contents of file NAME in DIR. */
+    private static String read(File dir, String name) throws IOException {
+        return Files.readString(new File(dir, name).toPath());
+    }
+
+    /** Write CONTENTS to file NAME in DIR. */
+    private static void write(File dir, String name, String contents)
+        throws IOException {
+        Files.writeString(new File(dir, name).toPath(), contents);
+    }
+
 }
 
 
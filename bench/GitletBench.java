@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** JMH benchmarks of the core gitlet commands, each run through Main.run
+ *  on a repository generated by SyntheticRepo with FILES files, COMMITS
+ *  commits and BRANCHES branches.  Throughput is reported in operations
+ *  per second; main adds the GC profiler so that every result also
+ *  carries its allocation rate, and writes the results as JSON so runs
+ *  can be compared for regressions.
+ *
+ *  The benchmarks must be started in an empty scratch directory holding
+ *  only the SyntheticRepo.MARKER file; "make bench" arranges this.
+ *  @author Nhu Vu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitletBench {
+
+    /** Number of files in the generated repository. */
+    @Param({ "1000" })
+    public int files;
+
+    /** Number of commits in the generated repository. */
+    @Param({ "100" })
+    public int commits;
+
+    /** Number of branches in the generated repository. */
+    @Param({ "4" })
+    public int branches;
+
+    /** Generate the repository, with branch b0 checked out. */
+    @Setup(Level.Trial)
+    public void generate() {
+        _repo = new SyntheticRepo(files, commits, branches);
+        _repo.generate();
+        _base = SyntheticRepo.head(SyntheticRepo.branch(0));
+        _other = SyntheticRepo.branch(branches > 1 ? 1 : 0);
+        _otherHead = SyntheticRepo.head(_other);
+    }
+
+    /** Reset b0 to its generated head after every iteration, so that the
+     *  commits made by the commit benchmark do not lengthen the history
+     *  measured by later iterations and benchmarks. */
+    @TearDown(Level.Iteration)
+    public void restore() {
+        _repo.run("reset", _base);
+    }
+
+    /** A working tree with a file changed before every operation, so
+     *  that there is always something to add and commit. */
+    @State(Scope.Benchmark)
+    public static class Changed {
+
+        /** Append a line to the first file of BENCH's repository.
+         *
+         * @param bench for the benchmark state.
+         */
+        @Setup(Level.Invocation)
+        public void change(GitletBench bench) {
+            count += 1;
+            bench._repo.append(0, "change " + count + "\n");
+        }
+
+        /** Number of changes made so far. */
+        int count;
+    }
+
+    /** Stage one changed file.
+     *
+     * @param changed for the changed working tree.
+     */
+    @Benchmark
+    public void add(Changed changed) {
+        _repo.run("add", SyntheticRepo.path(0));
+    }
+
+    /** Stage and commit one changed file.
+     *
+     * @param changed for the changed working tree.
+     */
+    @Benchmark
+    public void commit(Changed changed) {
+        _repo.run("add", SyntheticRepo.path(0));
+        _repo.run("commit", "bench " + changed.count);
+    }
+
+    /** Print the history of the current branch. */
+    @Benchmark
+    public void log() {
+        _repo.run("log");
+    }
+
+    /** Find commits by message through the message index. */
+    @Benchmark
+    public void find() {
+        _repo.run("find", "base");
+    }
+
+    /** Report the status of the working tree. */
+    @Benchmark
+    public void status() {
+        _repo.run("status");
+    }
+
+    /** Switch to another branch and back. */
+    @Benchmark
+    public void checkout() {
+        _repo.run("checkout", _other);
+        _repo.run("checkout", SyntheticRepo.branch(0));
+    }
+
+    /** Reset b0 to the head of another branch and back. */
+    @Benchmark
+    public void reset() {
+        _repo.run("reset", _otherHead);
+        _repo.run("reset", _base);
+    }
+
+    /** Merge another branch into b0 and undo the merge. */
+    @Benchmark
+    public void merge() {
+        _repo.run("merge", _other);
+        _repo.run("reset", _base);
+    }
+
+    /** Run the benchmarks selected by ARGS, which takes the usual JMH
+     *  options, with the GC profiler and JSON results.
+     *
+     * @param args for JMH options.
+     */
+    public static void main(String... args)
+        throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(GitletBench.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .build()).run();
+    }
+
+    /** The generated repository. */
+    private SyntheticRepo _repo;
+
+    /** Head of branch b0 as generated. */
+    private String _base;
+
+    /** Branch merged and checked out against b0. */
+    private String _other;
+
+    /** Head of that branch as generated. */
+    private String _otherHead;
+}
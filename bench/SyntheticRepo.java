@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Generator of synthetic repositories for the benchmarks.  A repository
+ *  has FILES files spread over directories of DIR_SIZE files, an initial
+ *  commit adding them all, and then COMMITS commits dealt round-robin to
+ *  BRANCHES branches b0, b1, ....  Branch k only ever changes the files
+ *  whose index is k modulo BRANCHES, so any two branches merge cleanly.
+ *
+ *  Every command is run through Main.run in this process, exactly as the
+ *  command line would run it, in the current directory, which must be a
+ *  scratch directory: generating a repository deletes what is there.
+ *  @author Nhu Vu
+ */
+class SyntheticRepo {
+
+    /** Number of files in each generated directory. */
+    static final int DIR_SIZE = 100;
+
+    /** Number of files changed by each generated commit. */
+    static final int FILES_PER_COMMIT = 10;
+
+    /** Marker file identifying a directory as a benchmark scratch
+     *  directory, which may safely be cleared. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** A repository of FILES files, COMMITS commits and BRANCHES
+     *  branches, not yet generated.
+     *
+     * @param files for number of files.
+     * @param commits for number of commits after the initial one.
+     * @param branches for number of branches.
+     */
+    SyntheticRepo(int files, int commits, int branches) {
+        _files = files;
+        _commits = commits;
+        _branches = Math.max(1, branches);
+        _repo = new Gitlet();
+    }
+
+    /** Clear the current directory and generate this repository in it,
+     *  leaving branch b0 checked out. */
+    void generate() {
+        clear();
+        run("init");
+        for (int k = 0; k < _files; k += 1) {
+            write(k, "file " + k + "\n");
+        }
+        run("add", ".");
+        run("commit", "base");
+        for (int b = 0; b < _branches; b += 1) {
+            run("branch", branch(b));
+        }
+        int[] next = new int[_branches];
+        for (int c = 0; c < _commits; c += 1) {
+            int b = c % _branches;
+            run("checkout", branch(b));
+            ArrayList<String> changed = new ArrayList<>();
+            for (int j = 0; j < FILES_PER_COMMIT; j += 1) {
+                int k = next[b] * _branches + b;
+                next[b] = (next[b] + 1) % Math.max(1, _files / _branches);
+                if (k < _files) {
+                    append(k, "commit " + c + "\n");
+                    changed.add(path(k));
+                }
+            }
+            String[] args = new String[changed.size() + 1];
+            args[0] = "add";
+            for (int j = 0; j < changed.size(); j += 1) {
+                args[j + 1] = changed.get(j);
+            }
+            run(args);
+            run("commit", "commit " + c + " on " + branch(b));
+        }
+        run("checkout", branch(0));
+    }
+
+    /** Run the gitlet command ARGS, discarding its output.
+     *
+     * @param args for command and operands.
+     */
+    void run(String... args) {
+        PrintStream stdout = System.out;
+        System.setOut(NULL_OUT);
+        try {
+            Main.run(_repo, args);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Return the name of branch K. */
+    static String branch(int k) {
+        return "b" + k;
+    }
+
+    /** Return the working path of file K. */
+    static String path(int k) {
+        return "d" + (k / DIR_SIZE) + "/f" + k + ".txt";
+    }
+
+    /** Return the id of the commit at the head of branch NAME. */
+    static String head(String name) {
+        return Utils.readContentsAsString(
+                Utils.join(Gitlet.BRANCH_DIR, name + ".txt"));
+    }
+
+    /** Replace the contents of file K with TEXT. */
+    void write(int k, String text) {
+        File file = Utils.join(Gitlet.CWD, path(k));
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, text);
+    }
+
+    /** Append TEXT to file K. */
+    void append(int k, String text) {
+        try {
+            Files.write(Utils.join(Gitlet.CWD, path(k)).toPath(),
+                    text.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Delete everything in the current directory but the marker file.
+     *  Refuses unless the marker file is present. */
+    private static void clear() {
+        File cwd = Gitlet.CWD.getAbsoluteFile();
+        if (!new File(cwd, MARKER).exists()) {
+            throw new IllegalArgumentException(cwd + " is not a benchmark "
+                    + "scratch directory: create " + MARKER + " in it");
+        }
+        File[] children = cwd.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (!child.getName().equals(MARKER)) {
+                delete(child);
+            }
+        }
+    }
+
+    /** Delete FILE and, if it is a directory, everything beneath it. */
+    private static void delete(File file) {
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            List<File> files = new ArrayList<>();
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> files.add(p.toFile()));
+            for (File f : files) {
+                f.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stream discarding everything printed by commands. */
+    private static final PrintStream NULL_OUT =
+        new PrintStream(OutputStream.nullOutputStream());
+
+    /** Number of files. */
+    private final int _files;
+
+    /** Number of commits after the initial one. */
+    private final int _commits;
+
+    /** Number of branches. */
+    private final int _branches;
+
+    /** Repository object passed to every command. */
+    private final Gitlet _repo;
+}